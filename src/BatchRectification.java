@@ -0,0 +1,181 @@
+import models.BatchReportModel;
+import models.RectificationModel;
+import models.StereoPairModel;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import utils.LatencyRecorder;
+import utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rectifies many stereo pairs sharing one pair of projection matrices
+ * decode, rectify and encode of a pair run on a fixed worker pool,
+ * the number of pairs in flight is bounded so the reader can not run ahead of the workers
+ * <p>
+ * Manifest format: one pair per line, path of image 1 and path of image 2 separated by a single tab or ';',
+ * surrounding whitespace of each path is removed so paths may contain spaces (but no tab or ';'),
+ * empty lines and lines starting with '#' are ignored, e.g. {@code left/img 01.png; right/img 01.png}
+ */
+public class BatchRectification {
+    private final Rectification rectification;
+    private final Mat ppm1;
+    private final Mat ppm2;
+    private final int threads;
+    private final int maxPairsInFlight;
+
+    /**
+     * @param rectification    rectification used for all pairs (its remap tables are shared)
+     * @param ppm1             projection matrix of camera 1
+     * @param ppm2             projection matrix of camera 2
+     * @param threads          number of worker threads
+     * @param maxPairsInFlight maximum number of pairs submitted but not yet written
+     */
+    public BatchRectification(Rectification rectification, Mat ppm1, Mat ppm2, int threads, int maxPairsInFlight) {
+        this.rectification = rectification;
+        this.ppm1 = ppm1;
+        this.ppm2 = ppm2;
+        this.threads = Math.max(1, threads);
+        this.maxPairsInFlight = Math.max(this.threads, maxPairsInFlight);
+    }
+
+    /**
+     * Reads stereo pairs from a manifest file in the format described in the class documentation
+     *
+     * @param fileName name of the manifest file
+     * @return list of stereo pairs
+     * @throws IOException if the manifest can not be read
+     */
+    public static List<StereoPairModel> loadManifest(String fileName) throws IOException {
+        List<StereoPairModel> pairs = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] paths = line.split("[\t;]", -1);
+                if (paths.length != 2 || paths[0].trim().isEmpty() || paths[1].trim().isEmpty()) {
+                    System.out.println("Skipping invalid manifest line: " + line);
+                    continue;
+                }
+                pairs.add(new StereoPairModel(paths[0].trim(), paths[1].trim()));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Pairs the images of a directory in natural order (calib0 + calib1, calib2 + calib3, ...)
+     *
+     * @param directory directory with the images
+     * @return list of stereo pairs
+     * @throws IOException if the directory can not be read
+     */
+    public static List<StereoPairModel> pairsFromDirectory(String directory) throws IOException {
+        File[] files = new File(directory).listFiles((dir, name) -> name.matches("(?i).*\\.(jpe?g|png|bmp|tiff?)$"));
+        if (files == null) {
+            throw new IOException("Can not list directory " + directory);
+        }
+        Arrays.sort(files, (a, b) -> Utils.compareNatural(a.getName(), b.getName()));
+
+        List<StereoPairModel> pairs = new ArrayList<>();
+        for (int i = 0; i + 1 < files.length; i += 2) {
+            pairs.add(new StereoPairModel(files[i].getPath(), files[i + 1].getPath()));
+        }
+        if (files.length % 2 != 0) {
+            System.out.println("Ignoring unpaired image " + files[files.length - 1].getName());
+        }
+        return pairs;
+    }
+
+    /**
+     * Rectifies all given pairs and writes the results to the output directory
+     *
+     * @param pairs           stereo pairs to be rectified
+     * @param outputDirectory directory for the rectified images
+     * @return throughput and per stage latencies
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public BatchReportModel run(List<StereoPairModel> pairs, String outputDirectory) throws InterruptedException {
+        new File(outputDirectory).mkdirs();
+
+        LatencyRecorder decodeLatency = new LatencyRecorder("decode");
+        LatencyRecorder rectifyLatency = new LatencyRecorder("rectify");
+        LatencyRecorder encodeLatency = new LatencyRecorder("encode");
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(maxPairsInFlight);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < pairs.size(); i++) {
+                StereoPairModel pair = pairs.get(i);
+                String outputName = outputDirectory + File.separator + "rectified_" + i + "_";
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        if (processPair(pair, outputName, decodeLatency, rectifyLatency, encodeLatency)) {
+                            processed.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        System.out.println("Exception: " + e.getMessage() + " (" + pair.getImage1() + ")");
+                        failed.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        BatchReportModel report = new BatchReportModel(processed.get(), failed.get(), elapsedSeconds,
+                decodeLatency, rectifyLatency, encodeLatency);
+        System.out.printf("Rectified %d pairs (%d failed) in %.2fs: %.2f pairs/s%n",
+                report.getProcessedPairs(), report.getFailedPairs(), elapsedSeconds, report.getPairsPerSecond());
+        System.out.println(decodeLatency);
+        System.out.println(rectifyLatency);
+        System.out.println(encodeLatency);
+        return report;
+    }
+
+    private boolean processPair(StereoPairModel pair, String outputName,
+                                LatencyRecorder decodeLatency, LatencyRecorder rectifyLatency, LatencyRecorder encodeLatency) {
+        long start = System.nanoTime();
+        Mat image1 = Imgcodecs.imread(pair.getImage1());
+        Mat image2 = Imgcodecs.imread(pair.getImage2());
+        long decoded = System.nanoTime();
+        decodeLatency.add(decoded - start);
+        if (image1.empty() || image2.empty()) {
+            System.out.println("Error: can not read " + pair.getImage1() + " / " + pair.getImage2());
+            return false;
+        }
+
+        RectificationModel result = rectification.doCachedRectification(ppm1, ppm2, image1, image2, null, null);
+        long rectified = System.nanoTime();
+        rectifyLatency.add(rectified - decoded);
+
+        boolean written = Imgcodecs.imwrite(outputName + "1.jpg", result.getRectifiedImage1())
+                & Imgcodecs.imwrite(outputName + "2.jpg", result.getRectifiedImage2());
+        encodeLatency.add(System.nanoTime() - rectified);
+        return written;
+    }
+}
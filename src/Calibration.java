@@ -1,26 +1,83 @@
 import models.CalibrationModel;
+import models.CalibrationProgressModel;
+import models.DetectionModel;
+import models.ReprojectionReportModel;
+import models.ViewSelectionModel;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.videoio.VideoCapture;
+import source.CameraFrameSource;
+import source.FrameSource;
+import utils.CornerCache;
+import utils.ImageLoader;
+import utils.ImageWriter;
+import utils.ReprojectionAnalyzer;
 import utils.Utils;
+import utils.ViewSelector;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.opencv.calib3d.Calib3d.*;
 import static org.opencv.core.CvType.CV_64F;
 import static org.opencv.highgui.HighGui.*;
-import static org.opencv.imgcodecs.Imgcodecs.imwrite;
+import static org.opencv.imgcodecs.Imgcodecs.*;
 import static utils.CalibrationUtils.saveCameraCalibration;
 
 public class Calibration {
+    private static final String DEFAULT_CAPTURE_DIRECTORY = "./res/output/calibration";
+    private static final String DEFAULT_CALIBRATION_DIRECTORY = ".";
+
     private final float calibrationSquareDimension = 0.0245f; // meters
     private final Size chessboardDimensions = new Size(9, 6);
+    private final ThreadLocal<Mat> grayScratch = ThreadLocal.withInitial(Mat::new);
+
+    private final int pyramidMaxDimension = 800; // pixels, larger images are downscaled for the detection
+    private final int minIncrementalViews = 10;
+    private final double convergenceThreshold = 0.001; // relative change of fx, fy, cx, cy
+    private final int convergenceSteps = 3; // consecutive steps below the threshold
+    private final double roiMargin = 0.25; // margin around the tracked board, relative to its size
+    private final int maxOutlierSolves = 5;
+    private final double minOutlierImprovement = 0.05; // relative decrease of the RMS error a rejection must achieve
+    private final int minCalibrationViews = 3;
 
-    private VideoCapture capture;
+    private int detectionThreads = Runtime.getRuntime().availableProcessors();
+    private boolean pyramidDetection = false;
+    private int calibrationFlags = 0;
+    private CornerCache cornerCache;
+    private ImageWriter imageWriter = ImageWriter.synchronous();
+    private boolean incrementalCalibration = false;
+    private boolean pipelinedCapture = false;
+    private boolean roiTracking = true;
+    private boolean headless = false;
+    private int headlessCaptureInterval = 0;
+    private String outputDirectory;
+    private Rect trackedBoard;
+    private int maxCalibrationViews = 0;
+    private ViewSelectionModel viewSelection;
+    private double outlierThreshold = 0; // pixels, 0 keeps all views
+    private ReprojectionReportModel reprojectionReport;
+    private Mat previousIntrinsic;
+    private int stableSteps;
+
+    private FrameSource source;
     private List<Mat> imagePoints;
     private List<Mat> objectPoints;
-    private MatOfPoint3f obj;
     private MatOfPoint2f imageCorners;
     private Mat intrinsic;
     private Mat distCoeffs;
@@ -29,71 +86,305 @@ public class Calibration {
      * Init all the (global) variables needed in the controller
      */
     protected void init() {
-        this.capture = new VideoCapture();
-        this.obj = new MatOfPoint3f();
         this.imageCorners = new MatOfPoint2f();
         this.imagePoints = new ArrayList<>();
         this.objectPoints = new ArrayList<>();
         this.intrinsic = new Mat(3, 3, CV_64F);
         this.distCoeffs = new Mat();
+        this.previousIntrinsic = null;
+        this.stableSteps = 0;
+        this.trackedBoard = null;
     }
 
     /**
      * starts the webcam and detects chessboard corners in a pattern
      * take images by pressing 'space' till the threshold (at least 10) to calibrate camera
+     * in incremental mode the camera is re-calibrated with every new view (starting at 10 views)
+     * and the estimate is saved when pressing 'esc'
      */
     public void takeImages() {
+        takeImages(new CameraFrameSource(0));
+    }
+
+    /**
+     * Detects chessboard corners in the frames of the given source, like 'takeImages()'
+     * in headless mode nothing is shown, every n-th frame is taken as view (see 'setHeadless')
+     * and the loop ends with the last frame of the source
+     *
+     * @param source source of the frames (camera, video, image directory, synthetic)
+     */
+    public void takeImages(FrameSource source) {
         init();
+        this.source = source;
         Mat frame = new Mat();
         Mat drawToFrame = new Mat();
 
-        capture.open(0);
-        if (!capture.isOpened()) {
+        if (!source.open()) {
+            return;
+        }
+        String captureDirectory = captureDirectory();
+        if (captureDirectory != null) {
+            new File(captureDirectory).mkdirs();
+        }
+        if (!headless) {
+            namedWindow("Webcam", WINDOW_AUTOSIZE); // 640 * 480
+        }
+
+        if (pipelinedCapture) {
+            takeImagesPipelined();
             return;
         }
         int framesPerSecond = 20;
-        namedWindow("Webcam", WINDOW_AUTOSIZE); // 640 * 480
+        long frames = 0;
+        long foundFrames = 0;
+        long start = System.nanoTime();
 
-        while (capture.read(frame)) {
+        try {
+            while (source.read(frame)) {
 
-            capture.read(frame);
+                if (!frame.empty()) {
+                    boolean found = findCornersTracked(frame, imageCorners);
+                    frames++;
+                    foundFrames += found ? 1 : 0;
+                    frame.copyTo(drawToFrame);
 
-            if (!frame.empty()) {
-                boolean found = findChessboardCorners(frame, chessboardDimensions, imageCorners, CALIB_CB_ADAPTIVE_THRESH | CALIB_CB_NORMALIZE_IMAGE | CALIB_CB_FAST_CHECK);
-                frame.copyTo(drawToFrame);
+                    drawChessboardCorners(drawToFrame, chessboardDimensions, imageCorners, found);
 
-                drawChessboardCorners(drawToFrame, chessboardDimensions, imageCorners, found);
+                    int character = showAndWaitKey(found ? drawToFrame : frame, 1000 / framesPerSecond, frames);
 
-                if (found) {
-                    imshow("Webcam", drawToFrame);
-                } else {
-                    imshow("Webcam", frame);
+                    if (!handleKey(character, frame, drawToFrame, imageCorners, found)) {
+                        return;
+                    }
                 }
-                int character = waitKey(1000 / framesPerSecond);
+            }
+        } finally {
+            source.close();
+            flushImages();
+            printCaptureStatistics(frames, frames, foundFrames, start);
+        }
+
+    }
 
-                switch (character) {
-                    case 32: // 32 = space key event
+    /**
+     * Capture loop with grab, detection and display as separate stages
+     * grab and detection run on their own threads, the stages are connected by queues holding only the latest item,
+     * so the camera is read at full frame rate and the detection always works on the newest frame (stale frames are dropped)
+     * the display runs on the calling thread and draws the latest detected corners onto the newest frame
+     */
+    private void takeImagesPipelined() {
+        BlockingQueue<Mat> detectionQueue = new ArrayBlockingQueue<>(1);
+        BlockingQueue<Mat> displayQueue = new ArrayBlockingQueue<>(1);
+        BlockingQueue<DetectionModel> resultQueue = new ArrayBlockingQueue<>(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong grabbedFrames = new AtomicLong();
+        AtomicLong detectedFrames = new AtomicLong();
+        AtomicLong foundFrames = new AtomicLong();
+        long start = System.nanoTime();
+
+        Thread grabber = new Thread(() -> {
+            try {
+                Mat frame = new Mat();
+                while (running.get() && source.read(frame)) {
+                    if (!frame.empty()) {
+                        grabbedFrames.incrementAndGet();
+                        // the detection stage gets its own copy, so the frames of both stages are never shared between threads
+                        offerLatest(detectionQueue, frame.clone());
+                        offerLatest(displayQueue, frame);
+                        frame = new Mat();
+                    }
+                }
+            } finally {
+                // also stops the other stages if the source throws
+                running.set(false);
+            }
+        }, "calibration-grab");
+        Thread detector = new Thread(() -> {
+            try {
+                while (running.get() || !detectionQueue.isEmpty()) {
+                    Mat frame = detectionQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (frame != null) {
+                        MatOfPoint2f corners = new MatOfPoint2f();
+                        boolean found = findCornersTracked(frame, corners);
+                        detectedFrames.incrementAndGet();
                         if (found) {
-                            imwrite("./res/output/calibration/calib" + objectPoints.size() + ".jpg", frame);
-                            imwrite("./res/output/calibration/calibWithChess" + objectPoints.size() + ".jpg", drawToFrame);
-                            System.out.println("found " + objectPoints.size());
-                            this.imagePoints.add(imageCorners);
-                            imageCorners = new MatOfPoint2f();
-                            this.objectPoints.add(obj);
-                        }
-                        if (objectPoints.size() > 31) {
-                            cameraCalibration(null, 0, 1);
+                            foundFrames.incrementAndGet();
                         }
+                        offerLatest(resultQueue, new DetectionModel(frame, corners, found));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "calibration-detect");
+        grabber.start();
+        detector.start();
+
+        try {
+            DetectionModel detection = null;
+            Mat drawToFrame = new Mat();
+            long displayedFrames = 0;
+            while (running.get()) {
+                Mat frame = displayQueue.poll(100, TimeUnit.MILLISECONDS);
+                DetectionModel latest = resultQueue.poll();
+                if (latest != null) {
+                    detection = latest;
+                }
+                if (frame == null) {
+                    continue;
+                }
+                frame.copyTo(drawToFrame);
+                if (detection != null && detection.isFound()) {
+                    drawChessboardCorners(drawToFrame, chessboardDimensions, detection.getCorners(), true);
+                }
+                int character = showAndWaitKey(drawToFrame, 1, ++displayedFrames);
+
+                if (character == 32 && detection != null) {
+                    // the saved view is the frame the corners were detected in
+                    Mat detectedFrame = detection.getFrame();
+                    Mat drawToDetectedFrame = detectedFrame.clone();
+                    drawChessboardCorners(drawToDetectedFrame, chessboardDimensions, detection.getCorners(), detection.isFound());
+                    if (!handleKey(character, detectedFrame, drawToDetectedFrame, detection.getCorners(), detection.isFound())) {
                         break;
-                    case 27: // 27 = esc key event
-                        System.out.println("Esc");
-                        return;
-                    default:
-                        break;
+                    }
+                    detection = null;
+                } else if (!handleKey(character, frame, drawToFrame, null, false)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+            try {
+                grabber.join();
+                detector.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            source.close();
+            flushImages();
+            printCaptureStatistics(grabbedFrames.get(), detectedFrames.get(), foundFrames.get(), start);
+        }
+    }
+
+    /**
+     * Shows a frame in the webcam window and waits for a key event
+     * in headless mode nothing is shown and every n-th frame is answered with 'space' (n = headless capture interval)
+     *
+     * @param frame       frame to be shown
+     * @param delay       milliseconds to wait for a key
+     * @param frameNumber number of the frame (starting at 1)
+     * @return pressed key or -1 if none
+     */
+    private int showAndWaitKey(Mat frame, int delay, long frameNumber) {
+        if (headless) {
+            return headlessCaptureInterval > 0 && frameNumber % headlessCaptureInterval == 0 ? 32 : -1;
+        }
+        imshow("Webcam", frame);
+        return waitKey(delay);
+    }
+
+    private static void printCaptureStatistics(long grabbedFrames, long detectedFrames, long foundFrames, long start) {
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Read %d frames, detected %d (%d with chessboard) in %.2fs: %.1f fps read, %.1f fps detected%n",
+                grabbedFrames, detectedFrames, foundFrames, elapsedSeconds,
+                grabbedFrames / elapsedSeconds, detectedFrames / elapsedSeconds);
+    }
+
+    /**
+     * Live chessboard detection, searches the region around the board of the last successful detection first
+     * and falls back to the whole frame only if the board is not found there
+     * (must only be called by one thread at a time, the tracked region is not synchronized)
+     *
+     * @param frame   camera frame
+     * @param corners output for the detected corners in frame coordinates
+     * @return whether the chessboard was found
+     */
+    private boolean findCornersTracked(Mat frame, MatOfPoint2f corners) {
+        int flags = CALIB_CB_ADAPTIVE_THRESH | CALIB_CB_NORMALIZE_IMAGE | CALIB_CB_FAST_CHECK;
+        if (roiTracking && trackedBoard != null) {
+            int marginX = (int) (trackedBoard.width * roiMargin);
+            int marginY = (int) (trackedBoard.height * roiMargin);
+            Rect roi = new Rect(new Point(Math.max(0, trackedBoard.x - marginX), Math.max(0, trackedBoard.y - marginY)),
+                    new Point(Math.min(frame.cols(), trackedBoard.br().x + marginX), Math.min(frame.rows(), trackedBoard.br().y + marginY)));
+            if (roi.width < frame.cols() || roi.height < frame.rows()) {
+                if (findChessboardCorners(frame.submat(roi), chessboardDimensions, corners, flags)) {
+                    Core.add(corners, new Scalar(roi.x, roi.y), corners);
+                    trackedBoard = Imgproc.boundingRect(corners);
+                    return true;
                 }
             }
         }
+        boolean found = findChessboardCorners(frame, chessboardDimensions, corners, flags);
+        trackedBoard = found ? Imgproc.boundingRect(corners) : null;
+        return found;
+    }
 
+    /**
+     * Handles the key events of the webcam window
+     * 'space' adds the current view (if the chessboard was found), 'esc' stops the capture
+     *
+     * @param character   pressed key (-1 if none)
+     * @param frame       current frame
+     * @param drawToFrame current frame with the drawn corners
+     * @param corners     detected corners of the current frame
+     * @param found       whether the chessboard was found in the current frame
+     * @return false if the capture shall stop
+     */
+    private boolean handleKey(int character, Mat frame, Mat drawToFrame, MatOfPoint2f corners, boolean found) {
+        switch (character) {
+            case 32: // 32 = space key event
+                if (found) {
+                    String captureDirectory = captureDirectory();
+                    if (captureDirectory != null) {
+                        imageWriter.write(new File(captureDirectory, "calib" + objectPoints.size()).getPath(), frame);
+                        imageWriter.write(new File(captureDirectory, "calibWithChess" + objectPoints.size()).getPath(), drawToFrame);
+                    }
+                    System.out.println("found " + objectPoints.size());
+                    // refined like the offline detection, so the view does not depend on the searched region
+                    MatOfPoint2f refined = new MatOfPoint2f(corners.clone());
+                    Mat grayImg = frame;
+                    if (frame.channels() != 1) {
+                        grayImg = new Mat();
+                        Imgproc.cvtColor(frame, grayImg, Imgproc.COLOR_BGR2GRAY);
+                    }
+                    TermCriteria term = new TermCriteria(TermCriteria.EPS | TermCriteria.MAX_ITER, 30, 0.1);
+                    Imgproc.cornerSubPix(grayImg, refined, new Size(11, 11), new Size(-1, -1), term);
+                    this.imagePoints.add(refined);
+                    this.objectPoints.add(boardPosition());
+                    if (incrementalCalibration) {
+                        CalibrationProgressModel progress = calibrateIncrementally(frame.size());
+                        if (progress != null) {
+                            System.out.println(progress);
+                            if (progress.isConverged()) {
+                                System.out.println("Estimate stable, press 'esc' to stop");
+                            }
+                        }
+                    }
+                }
+                if (!incrementalCalibration && objectPoints.size() > 31) {
+                    calibrate(0, 1);
+                }
+                return true;
+            case 27: // 27 = esc key event
+                System.out.println("Esc");
+                String calibrationDirectory = calibrationDirectory();
+                if (incrementalCalibration && previousIntrinsic != null && calibrationDirectory != null) {
+                    saveCameraCalibration(new File(calibrationDirectory, "cameraParams").getPath(), intrinsic, distCoeffs);
+                }
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Puts an item into a queue of capacity 1, an item that was not taken yet is dropped
+     */
+    private static <T> void offerLatest(BlockingQueue<T> queue, T item) {
+        while (!queue.offer(item)) {
+            queue.poll();
+        }
     }
 
     /**
@@ -102,18 +393,88 @@ public class Calibration {
      * @param calibrationImages images for calibration
      * @param index_1           index for image 1
      * @param index_2           index for image 2
-     * @return image points of the images with the given index
+     * @return image points of the images with the given index or null if a detection failed
      */
     public CalibrationModel cameraCalibration(List<Mat> calibrationImages, int index_1, int index_2) {
+        if (!getChessBoardCorners(calibrationImages)) {
+            return null;
+        }
 
-        if (calibrationImages != null) {
+        return calibrate(index_1, index_2);
+    }
 
-            getChessBoardCorners(calibrationImages);
-        } else {
+    /**
+     * Calibrates the camera for the images of the given loader
+     * the detection of an image starts as soon as it is decoded, at most one image per detection thread waits for
+     * the detection, so only the images prefetched by the loader are held in memory (instead of all images)
+     * the loader can decode gray scale images (IMREAD_GRAYSCALE), the detection converts them anyway
+     *
+     * @param images  loader of the calibration images, must decode at full resolution (IMREAD_REDUCED_* is rejected,
+     *                the corners and the camera matrix would be in the coordinates of the reduced images)
+     * @param index_1 index for image 1
+     * @param index_2 index for image 2
+     * @return image points of the images with the given index or null if a detection failed
+     */
+    public CalibrationModel cameraCalibration(ImageLoader images, int index_1, int index_2) {
+        if (images.getScale() != 1) {
+            System.out.println("Error: calibration images must be decoded at full resolution, scale is " + images.getScale());
+            images.close();
+            return null;
+        }
+        int threads = Math.max(1, detectionThreads);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads);
+        List<Future<List<Mat>>> detections = new ArrayList<>();
+        try {
+            while (images.hasNext()) {
+                Mat image = images.next();
+                inFlight.acquire();
+                detections.add(workers.submit(() -> {
+                    try {
+                        return image.empty() ? null : detectBoard(image);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            addBoards(detections);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Exception: " + e.getMessage());
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Exception: " + e.getCause().getMessage());
+            return null;
+        } finally {
+            workers.shutdownNow();
+            images.close();
+        }
+
+        return calibrate(index_1, index_2);
+    }
 
-            createKnownBoardPosition();
+    /**
+     * Calibrates the camera for the given image files
+     * corners found in an earlier run are taken from the corner cache (if set), those images are not decoded again
+     *
+     * @param fileNames file names of the calibration images
+     * @param index_1   index for image 1
+     * @param index_2   index for image 2
+     * @return image points of the images with the given index or null if a detection failed
+     */
+    public CalibrationModel cameraCalibrationFromFiles(List<String> fileNames, int index_1, int index_2) {
+        List<Callable<List<Mat>>> tasks = new ArrayList<>();
+        for (String fileName : fileNames) {
+            tasks.add(() -> loadBoard(fileName));
         }
+        if (!collectCorners(tasks)) {
+            return null;
+        }
+
+        return calibrate(index_1, index_2);
+    }
 
+    private CalibrationModel calibrate(int index_1, int index_2) {
         List<Mat> rVectors = new ArrayList<>();
         List<Mat> tVectors = new ArrayList<>();
 
@@ -122,41 +483,471 @@ public class Calibration {
 
         distCoeffs = Mat.zeros(5, 1, CV_64F);
 
-        double result = calibrateCamera(objectPoints, imagePoints, chessboardDimensions, intrinsic, distCoeffs, rVectors, tVectors);
-        Utils utils = new Utils();
-        utils.calculatePPM("projectionMatrices", rVectors, tVectors, intrinsic, index_1, index_2);
-        boolean isCalibrated = saveCameraCalibration("cameraParams", intrinsic, distCoeffs);
-        if (isCalibrated) {
-            System.out.println("Done");
+        // large sets are reduced to the most informative views (the views of image 1 and 2 are always kept)
+        List<Integer> views = new ArrayList<>();
+        boolean selected = maxCalibrationViews > 0 && imagePoints.size() > maxCalibrationViews;
+        if (selected) {
+            views.addAll(new ViewSelector(chessboardDimensions).select(imagePoints, maxCalibrationViews, index_1, index_2));
+        } else {
+            for (int view = 0; view < imagePoints.size(); view++) {
+                views.add(view);
+            }
+        }
+
+        double result = calibrateCamera(subset(objectPoints, views), subset(imagePoints, views), chessboardDimensions, intrinsic, distCoeffs, rVectors, tVectors, calibrationFlags);
+
+        reprojectionReport = null;
+        if (outlierThreshold > 0) {
+            result = rejectOutliers(views, rVectors, tVectors, result, index_1, index_2);
+            System.out.println(reprojectionReport);
+        }
+
+        viewSelection = null;
+        if (selected) {
+            viewSelection = new ViewSelectionModel(views, imagePoints.size(), result,
+                    ViewSelector.reprojectionError(objectPoints, imagePoints, intrinsic, distCoeffs));
+            System.out.println(viewSelection);
+        }
+        String calibrationDirectory = calibrationDirectory();
+        if (calibrationDirectory != null) {
+            Utils utils = new Utils();
+            utils.calculatePPM(new File(calibrationDirectory, "projectionMatrices").getPath(), rVectors, tVectors, intrinsic,
+                    views.indexOf(index_1), views.indexOf(index_2));
+            boolean isCalibrated = saveCameraCalibration(new File(calibrationDirectory, "cameraParams").getPath(), intrinsic, distCoeffs);
+            if (isCalibrated) {
+                System.out.println("Done");
+            }
         }
         System.out.println("Result: " + result);
         return new CalibrationModel(imagePoints.get(index_1), imagePoints.get(index_2));
     }
 
-    public void createKnownBoardPosition() {
+    /**
+     * Drops the view with the largest reprojection error above the threshold and calibrates again, one view per solve
+     * stops when no view is above the threshold, after 'maxOutlierSolves' solves or when a solve does not lower
+     * the RMS error by at least 'minOutlierImprovement' (relative), that solve is discarded
+     * the best solve is kept in 'intrinsic', 'distCoeffs', the given views and pose vectors
+     *
+     * @param views    used views, rejected views are removed
+     * @param rVectors rotation vectors of the used views
+     * @param tVectors translation vectors of the used views
+     * @param result   RMS error of the first solve
+     * @param index_1  index of image 1 (never rejected)
+     * @param index_2  index of image 2 (never rejected)
+     * @return RMS error of the best solve
+     */
+    private double rejectOutliers(List<Integer> views, List<Mat> rVectors, List<Mat> tVectors, double result,
+                                  int index_1, int index_2) {
+        ReprojectionAnalyzer analyzer = new ReprojectionAnalyzer();
+        double[][] cornerErrors = analyzer.cornerErrors(subset(objectPoints, views), subset(imagePoints, views), rVectors, tVectors, intrinsic, distCoeffs);
+        List<Integer> rejectedViews = new ArrayList<>();
+        int solves = 1;
+        while (solves < maxOutlierSolves && views.size() > minCalibrationViews) {
+            int worst = -1;
+            double worstError = outlierThreshold;
+            for (int i = 0; i < views.size(); i++) {
+                int view = views.get(i);
+                double error = ReprojectionAnalyzer.rms(cornerErrors[i]);
+                if (view != index_1 && view != index_2 && error > worstError) {
+                    worst = i;
+                    worstError = error;
+                }
+            }
+            if (worst < 0) {
+                break;
+            }
+
+            List<Integer> candidateViews = new ArrayList<>(views);
+            int rejected = candidateViews.remove(worst);
+            Mat candidateIntrinsic = Mat.eye(3, 3, CV_64F);
+            Mat candidateDistCoeffs = Mat.zeros(5, 1, CV_64F);
+            List<Mat> candidateRVectors = new ArrayList<>();
+            List<Mat> candidateTVectors = new ArrayList<>();
+            double candidateResult = calibrateCamera(subset(objectPoints, candidateViews), subset(imagePoints, candidateViews), chessboardDimensions,
+                    candidateIntrinsic, candidateDistCoeffs, candidateRVectors, candidateTVectors, calibrationFlags);
+            solves++;
+            if (candidateResult > result * (1 - minOutlierImprovement)) {
+                break;
+            }
+
+            views.remove(worst);
+            rejectedViews.add(rejected);
+            intrinsic = candidateIntrinsic;
+            distCoeffs = candidateDistCoeffs;
+            rVectors.clear();
+            rVectors.addAll(candidateRVectors);
+            tVectors.clear();
+            tVectors.addAll(candidateTVectors);
+            result = candidateResult;
+            cornerErrors = analyzer.cornerErrors(subset(objectPoints, views), subset(imagePoints, views), rVectors, tVectors, intrinsic, distCoeffs);
+        }
+
+        double[] viewErrors = new double[views.size()];
+        for (int i = 0; i < viewErrors.length; i++) {
+            viewErrors[i] = ReprojectionAnalyzer.rms(cornerErrors[i]);
+        }
+        reprojectionReport = new ReprojectionReportModel(views, rejectedViews, viewErrors, cornerErrors, result, solves);
+        return result;
+    }
+
+    private static List<Mat> subset(List<Mat> mats, List<Integer> indices) {
+        List<Mat> subset = new ArrayList<>();
+        for (int index : indices) {
+            subset.add(mats.get(index));
+        }
+        return subset;
+    }
+
+    /**
+     * Re-calibrates the camera with all views collected so far
+     * after the first solve the previous estimate is used as initial guess (CALIB_USE_INTRINSIC_GUESS),
+     * so each new view only needs a few iterations to refine it
+     * the estimate counts as converged once fx, fy, cx and cy changed less than 0.1% in 3 consecutive steps
+     *
+     * @param imageSize size of the calibration images
+     * @return estimate and convergence or null if there are less than 10 views
+     */
+    public CalibrationProgressModel calibrateIncrementally(Size imageSize) {
+        if (objectPoints.size() < minIncrementalViews) {
+            return null;
+        }
+        int flags = calibrationFlags;
+        if (previousIntrinsic != null) {
+            flags |= CALIB_USE_INTRINSIC_GUESS;
+        } else {
+            intrinsic = Mat.eye(3, 3, CV_64F);
+            distCoeffs = Mat.zeros(5, 1, CV_64F);
+        }
+
+        List<Mat> rVectors = new ArrayList<>();
+        List<Mat> tVectors = new ArrayList<>();
+        double rmsError = calibrateCamera(objectPoints, imagePoints, imageSize, intrinsic, distCoeffs, rVectors, tVectors, flags);
+
+        double relativeChange = Double.POSITIVE_INFINITY;
+        if (previousIntrinsic != null) {
+            relativeChange = 0;
+            for (int[] index : new int[][]{{0, 0}, {1, 1}, {0, 2}, {1, 2}}) {
+                double previous = previousIntrinsic.get(index[0], index[1])[0];
+                double current = intrinsic.get(index[0], index[1])[0];
+                relativeChange = Math.max(relativeChange, Math.abs(current - previous) / Math.abs(previous));
+            }
+        }
+        previousIntrinsic = intrinsic.clone();
+        stableSteps = relativeChange < convergenceThreshold ? stableSteps + 1 : 0;
+
+        return new CalibrationProgressModel(objectPoints.size(), rmsError, relativeChange,
+                stableSteps >= convergenceSteps, intrinsic.clone(), distCoeffs.clone());
+    }
+
+    /**
+     * Detects the chessboard corners of all images on a worker pool
+     * the results are merged in the order of the given images, so the calibration does not depend on the scheduling
+     *
+     * @param images calibration images
+     * @return false if a detection failed (no corners are added then)
+     */
+    public boolean getChessBoardCorners(List<Mat> images) {
+        List<Callable<List<Mat>>> tasks = new ArrayList<>();
+        for (Mat image : images) {
+            tasks.add(() -> detectBoard(image));
+        }
+        return collectCorners(tasks);
+    }
+
+    /**
+     * Runs the detection tasks on a worker pool and adds the found image and object points in the order of the tasks
+     *
+     * @param tasks detection tasks, each returns image points and object points or null if the chessboard was not found
+     * @return false if a task failed or the detection was interrupted (no corners are added then)
+     */
+    private boolean collectCorners(List<Callable<List<Mat>>> tasks) {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(detectionThreads, tasks.size())));
+        try {
+            addBoards(workers.invokeAll(tasks));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Exception: " + e.getMessage());
+            return false;
+        } catch (ExecutionException e) {
+            System.out.println("Exception: " + e.getCause().getMessage());
+            return false;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for all detections and adds the found image and object points in the order of the detections
+     * nothing is added if a detection failed, a missing view would shift the indices of all following views
+     *
+     * @param detections pending detections, each returns image points and object points or null if the chessboard was not found
+     */
+    private void addBoards(List<Future<List<Mat>>> detections) throws InterruptedException, ExecutionException {
+        List<List<Mat>> boards = new ArrayList<>();
+        for (Future<List<Mat>> detection : detections) {
+            boards.add(detection.get());
+        }
+        for (List<Mat> board : boards) {
+            if (board != null) {
+                this.imagePoints.add(board.get(0));
+                this.objectPoints.add(board.get(1));
+            }
+        }
+    }
+
+    /**
+     * Reads an image file and returns its corners from the corner cache or detects (and caches) them
+     *
+     * @param fileName file name of the calibration image
+     * @return image points and object points or null if the chessboard was not found
+     */
+    private List<Mat> loadBoard(String fileName) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(Paths.get(fileName));
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            return null;
+        }
+        String key = null;
+        if (cornerCache != null) {
+            key = CornerCache.key(content, boardSettings());
+            List<Mat> cached = cornerCache.load(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+        }
+
+        Mat image = imdecode(new MatOfByte(content), IMREAD_COLOR);
+        if (image.empty()) {
+            System.out.println(fileName + " Error: can not decode image.");
+            return null;
+        }
+        List<Mat> board = detectBoard(image);
+        if (key != null) {
+            cornerCache.save(key, board != null ? board.get(0) : null, board != null ? board.get(1) : null);
+        }
+        return board;
+    }
+
+    /**
+     * @param image calibration image
+     * @return image points and object points or null if the chessboard was not found
+     */
+    private List<Mat> detectBoard(Mat image) {
+        MatOfPoint2f corners = detectCorners(image);
+        if (corners == null) {
+            return null;
+        }
+        return Arrays.asList(corners, boardPosition());
+    }
+
+    /**
+     * @return known board position of all corners in a new matrix
+     */
+    private MatOfPoint3f boardPosition() {
+        MatOfPoint3f board = new MatOfPoint3f();
         for (int i = 0; i < chessboardDimensions.height; i++) {
             for (int j = 0; j < chessboardDimensions.width; j++) {
-                obj.push_back(new MatOfPoint3f(new Point3(j * calibrationSquareDimension, i * calibrationSquareDimension, 0.0f)));
+                board.push_back(new MatOfPoint3f(new Point3(j * calibrationSquareDimension, i * calibrationSquareDimension, 0.0f)));
             }
         }
+        return board;
     }
 
-    public void getChessBoardCorners(List<Mat> images) {
-        for (Mat image : images) {
-            obj = new MatOfPoint3f();
-            createKnownBoardPosition();
-            Mat grayImg = new Mat();
+    /**
+     * @return board and detection settings the cached corners depend on
+     */
+    private String boardSettings() {
+        return (int) chessboardDimensions.width + "x" + (int) chessboardDimensions.height + ";"
+                + calibrationSquareDimension + ";" + (pyramidDetection ? "pyramid" : "full");
+    }
+
+    /**
+     * Detects and refines the chessboard corners of one image, uses a gray scale scratch Mat per thread
+     * in pyramid mode the board is searched on a downscaled image, the corners are scaled back
+     * and refined at full resolution (falls back to a full resolution search if the board is not found)
+     *
+     * @param image calibration image (BGR or gray scale)
+     * @return refined corners or null if the chessboard was not found
+     */
+    private MatOfPoint2f detectCorners(Mat image) {
+        Mat grayImg = image;
+        if (image.channels() != 1) {
+            grayImg = grayScratch.get();
             Imgproc.cvtColor(image, grayImg, Imgproc.COLOR_BGR2GRAY);
-            MatOfPoint2f pointBuf = new MatOfPoint2f();
+        }
+        MatOfPoint2f pointBuf = pyramidDetection ? findCornersOnPyramid(grayImg) : null;
+        if (pointBuf == null) {
+            pointBuf = new MatOfPoint2f();
             boolean found = findChessboardCorners(grayImg, chessboardDimensions, pointBuf, CALIB_CB_ADAPTIVE_THRESH | CALIB_CB_NORMALIZE_IMAGE);
-            if (found) {
-                TermCriteria term = new TermCriteria(TermCriteria.EPS | TermCriteria.MAX_ITER, 30, 0.1);
-                Imgproc.cornerSubPix(grayImg, pointBuf, new Size(11, 11), new Size(-1, -1), term);
-
-                this.imagePoints.add(pointBuf);
-                this.objectPoints.add(obj);
+            if (!found) {
+                return null;
             }
+        }
+        TermCriteria term = new TermCriteria(TermCriteria.EPS | TermCriteria.MAX_ITER, 30, 0.1);
+        Imgproc.cornerSubPix(grayImg, pointBuf, new Size(11, 11), new Size(-1, -1), term);
+        return pointBuf;
+    }
+
+    /**
+     * Halves the gray scale image until it fits into 'pyramidMaxDimension' and searches the chessboard there
+     *
+     * @param grayImg full resolution gray scale image
+     * @return corners in full resolution coordinates (not refined) or null if not found or no downscaling needed
+     */
+    private MatOfPoint2f findCornersOnPyramid(Mat grayImg) {
+        Mat level = grayImg;
+        int factor = 1;
+        while (Math.max(level.cols(), level.rows()) > pyramidMaxDimension) {
+            Mat smaller = new Mat();
+            Imgproc.pyrDown(level, smaller);
+            level = smaller;
+            factor *= 2;
+        }
+        if (factor == 1) {
+            return null;
+        }
+        MatOfPoint2f pointBuf = new MatOfPoint2f();
+        if (!findChessboardCorners(level, chessboardDimensions, pointBuf, CALIB_CB_ADAPTIVE_THRESH | CALIB_CB_NORMALIZE_IMAGE)) {
+            return null;
+        }
+        // pixel i of a pyrDown level is centered on pixel 2 * i of the level below
+        Core.multiply(pointBuf, Scalar.all(factor), pointBuf);
+        return pointBuf;
+    }
+
+    /**
+     * @param detectionThreads number of threads used for the chessboard detection
+     */
+    public void setDetectionThreads(int detectionThreads) {
+        this.detectionThreads = detectionThreads;
+    }
+
+    /**
+     * @param pyramidDetection whether the chessboard is searched on a downscaled image (refinement stays at full resolution)
+     */
+    public void setPyramidDetection(boolean pyramidDetection) {
+        this.pyramidDetection = pyramidDetection;
+    }
+
+    /**
+     * @param calibrationFlags flags passed to 'calibrateCamera' (e.g. CALIB_FIX_K3)
+     */
+    public void setCalibrationFlags(int calibrationFlags) {
+        this.calibrationFlags = calibrationFlags;
+    }
+
+    /**
+     * @param imageWriter writer of the captured views (codec, quality and encoder threads)
+     */
+    public void setImageWriter(ImageWriter imageWriter) {
+        this.imageWriter = imageWriter;
+    }
 
+    /**
+     * Waits until the captured views are written, so they can be read for the calibration
+     */
+    private void flushImages() {
+        try {
+            imageWriter.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
+
+    /**
+     * @param cornerCache cache for the corners of calibration image files, null disables caching
+     */
+    public void setCornerCache(CornerCache cornerCache) {
+        this.cornerCache = cornerCache;
+    }
+
+    /**
+     * @param incrementalCalibration whether 'takeImages' re-calibrates with every new view
+     */
+    public void setIncrementalCalibration(boolean incrementalCalibration) {
+        this.incrementalCalibration = incrementalCalibration;
+    }
+
+    /**
+     * @param pipelinedCapture whether 'takeImages' runs grab, detection and display on separate threads
+     */
+    public void setPipelinedCapture(boolean pipelinedCapture) {
+        this.pipelinedCapture = pipelinedCapture;
+    }
+
+    /**
+     * @param roiTracking whether the live detection searches around the last detected board first
+     */
+    public void setRoiTracking(boolean roiTracking) {
+        this.roiTracking = roiTracking;
+    }
+
+    /**
+     * @param maxCalibrationViews maximum number of views passed to 'calibrateCamera', 0 uses all views
+     *                            (picked by their board position, size and tilt in the image, see 'ViewSelector')
+     */
+    public void setMaxCalibrationViews(int maxCalibrationViews) {
+        this.maxCalibrationViews = maxCalibrationViews;
+    }
+
+    /**
+     * @return selected views and their errors of the last calibration or null if all views were used
+     */
+    public ViewSelectionModel getViewSelection() {
+        return viewSelection;
+    }
+
+    /**
+     * @param outlierThreshold views with a larger RMS reprojection error (pixels) are dropped, 0 keeps all views
+     */
+    public void setOutlierThreshold(double outlierThreshold) {
+        this.outlierThreshold = outlierThreshold;
+    }
+
+    /**
+     * @return per view and per corner reprojection errors of the last calibration or null if outlier rejection is disabled
+     */
+    public ReprojectionReportModel getReprojectionReport() {
+        return reprojectionReport;
+    }
+
+    /**
+     * Headless mode for servers and load tests: no window, no key events,
+     * the views and the calibration are not written unless an output directory is set (see 'setOutputDirectory')
+     *
+     * @param headless        whether 'takeImages' runs without window
+     * @param captureInterval every n-th frame is taken as view if the chessboard was found, 0 takes no views
+     */
+    public void setHeadless(boolean headless, int captureInterval) {
+        this.headless = headless;
+        this.headlessCaptureInterval = captureInterval;
+    }
+
+    /**
+     * Directory for the captured views and the calibration files ('projectionMatrices', 'cameraParams')
+     * by default the views are written to /res/output/calibration and the calibration files to the working directory,
+     * in headless mode nothing is written unless a directory is set
+     *
+     * @param outputDirectory output directory or null for the default
+     */
+    public void setOutputDirectory(String outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * @return directory for the captured views or null if they are not written
+     */
+    private String captureDirectory() {
+        return outputDirectory != null ? outputDirectory : headless ? null : DEFAULT_CAPTURE_DIRECTORY;
+    }
+
+    /**
+     * @return directory for the calibration files or null if they are not written
+     */
+    private String calibrationDirectory() {
+        return outputDirectory != null ? outputDirectory : headless ? null : DEFAULT_CALIBRATION_DIRECTORY;
+    }
 }
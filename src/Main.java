@@ -3,19 +3,23 @@ import models.RectificationModel;
 import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
 import utils.CalibrationUtils;
+import utils.CornerCache;
+import utils.ImageWriter;
+import utils.RectificationStore;
 import utils.Utils;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.opencv.calib3d.Calib3d.solvePnPRansac;
-import static org.opencv.imgcodecs.Imgcodecs.imwrite;
 
 public class Main {
     private static final String OUTPUT_PATH = "./res/output/";
     private static final String IMAGE_PATH = "./res/images/";
+    private static final String CACHE_PATH = "./res/cache/";
 
     private static final String CAMERA_PARAMS_FILENAME = "cameraParams";
     private static final String PROJECTION_MATRICES_FILENAME = "projectionMatrices";
@@ -27,23 +31,47 @@ public class Main {
         Rectification rectification = new Rectification();
         Utils utils = new Utils();
         Calibration calibration = new Calibration();
+        // output images are encoded on 2 background threads, at most 64 MB of images wait for encoding
+        ImageWriter imageWriter = new ImageWriter(ImageWriter.Format.JPEG, -1, 2, 64L << 20).closeOnShutdown();
+        calibration.setImageWriter(imageWriter);
+        utils.setImageWriter(imageWriter);
 
         // inits variables used in the calibration process
         calibration.init();
 
         // used to calibrate a connected/embedded webcam by taking images
 //        calibration.takeImages();
+        // runs the capture loop without window on another frame source (video file, image directory, synthetic frames),
+        // every 30th frame with a chessboard is taken as view
+//        calibration.setHeadless(true, 30);
+//        calibration.setOutputDirectory(OUTPUT_PATH + "headless"); // views and calibration files, nothing is written without
+//        calibration.takeImages(new DirectoryFrameSource(OUTPUT_PATH + "calibration"));
 
         // which images in folder /res/output/calibration shall be rectified
         int index_image_1 = 0;
         int index_image_2 = 1;
         CalibrationModel calibrationModel = new CalibrationModel(null, null);
-        // used to calibrate with a given set of images saved in the /res folder
+        // used to calibrate with a given set of images saved in the /res folder,
+        // detected corners are cached in /res/cache/corners so a re-run does not decode the images again
         try {
-            calibrationModel = calibration.cameraCalibration(loadImages(), index_image_1, index_image_2);
+            calibration.setCornerCache(new CornerCache(CACHE_PATH + "corners"));
+            calibrationModel = calibration.cameraCalibrationFromFiles(loadImageNames(), index_image_1, index_image_2);
+            // without cache: the images are decoded in gray scale on 2 threads ahead of the detection (at most 32 MB prefetched)
+//            calibrationModel = calibration.cameraCalibration(
+//                    new ImageLoader(loadImageNames(), Imgcodecs.IMREAD_GRAYSCALE, 2, 32L << 20), index_image_1, index_image_2);
+            // previews of the calibration images, decoded at 1/4 of their size
+//            ImageLoader previews = new ImageLoader(loadImageNames(), Imgcodecs.IMREAD_REDUCED_COLOR_4, 2, 8L << 20);
+//            while (previews.hasNext()) {
+//                Mat preview = previews.next();
+//                imageWriter.write(OUTPUT_PATH + "preview/preview" + previews.getIndex(), preview);
+//            }
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+        if (calibrationModel == null) {
+            System.out.println("Error: calibration failed");
+            return;
+        }
 
 
         Mat calibration_image_1 = Imgcodecs.imread(OUTPUT_PATH + "calibration/calib" + index_image_1 + ".jpg");
@@ -66,8 +94,8 @@ public class Main {
 //        Mat good_matches_1;
 //        Mat good_matches_2;
 //        result = utils.computeEpiLines(calibration_image_1, calibration_image_2, calibrationModel.getCalibrationImagePoints1(), calibrationModel.getCalibrationImagePoints2());
-//        imwrite("./res/output/epipolar/epipolar_output_3.jpg", result.get(2));
-//        imwrite("./res/output/epipolar/epipolar_output_4.jpg", result.get(3));
+//        imageWriter.write("./res/output/epipolar/epipolar_output_3", result.get(2));
+//        imageWriter.write("./res/output/epipolar/epipolar_output_4", result.get(3));
 //        good_matches_1 = result.get(0);
 //        good_matches_2 = result.get(1);
 
@@ -77,15 +105,42 @@ public class Main {
         result = CalibrationUtils.loadPPM(PROJECTION_MATRICES_FILENAME, PPM1, PPM2);
         PPM1 = result.get(0);
         PPM2 = result.get(1);
-
-        // rectification process
-        RectificationModel rectiResults = rectification.doRectification(PPM1, PPM2,
+        // stores the projection matrices in the binary format ('loadPPM' reads both formats, binary files load faster)
+//        CalibrationUtils.savePPMBinary(PROJECTION_MATRICES_FILENAME, PPM1, PPM2);
+        // calibrations of many rigs (one directory per rig id) are loaded on first use and cached up to 64 MB
+//        CalibrationRegistry registry = new CalibrationRegistry("./res/rigs", 64L << 20);
+//        PPM1 = registry.get("rig0").getPpm1();
+//        PPM2 = registry.get("rig0").getPpm2();
+        // the remap tables of a rig are cached in the registry as well (counted against its 64 MB)
+//        RectificationModel rigResults = rectification.doRigRectification(registry, "rig0",
+//                calibration_image_1, calibration_image_2,
+//                calibrationModel.getCalibrationImagePoints1(), calibrationModel.getCalibrationImagePoints2());
+
+        // rectification process, the results are stored in /res/cache so a restart with the same
+        // projection matrices skips 'rectify' and the computation of the remap tables
+        rectification.setStore(new RectificationStore(CACHE_PATH));
+        RectificationModel rectiResults = rectification.doCachedRectification(PPM1, PPM2,
                 calibration_image_1,
                 calibration_image_2,
                 calibrationModel.getCalibrationImagePoints1(),
                 calibrationModel.getCalibrationImagePoints2());
-        imwrite(OUTPUT_PATH + "rectification/rectified_image_3.jpg", rectiResults.getRectifiedImage1());
-        imwrite(OUTPUT_PATH + "rectification/rectified_image_4.jpg", rectiResults.getRectifiedImage2());
+        imageWriter.write(OUTPUT_PATH + "rectification/rectified_image_3", rectiResults.getRectifiedImage1());
+        imageWriter.write(OUTPUT_PATH + "rectification/rectified_image_4", rectiResults.getRectifiedImage2());
+
+        // streams frames with a calibration that can be replaced while running, a background re-calibration
+        // publishes new projection matrices and the next frame is rectified with them
+//        CalibrationHolder holder = new CalibrationHolder();
+//        rectification.publishCalibration(holder, PPM1, PPM2, calibration_image_1.size());
+//        rectiResults = rectification.doHotSwapRectification(holder, calibration_image_1, calibration_image_2, null, null);
+//        rectification.publishCalibrationAsync(holder, PPM1, PPM2, calibration_image_1.size(), ForkJoinPool.commonPool());
+
+        // rectifies all stereo pairs of a directory (calib0 + calib1, calib2 + calib3, ...) with the loaded projection matrices
+//        try {
+//            new BatchRectification(rectification, PPM1, PPM2, 4, 16)
+//                    .run(BatchRectification.pairsFromDirectory(OUTPUT_PATH + "calibration"), OUTPUT_PATH + "rectification/batch");
+//        } catch (IOException | InterruptedException e) {
+//            e.printStackTrace();
+//        }
 
         // loads the rectified images and draws epilines
 //        result = utils.computeEpiLines(
@@ -93,36 +148,37 @@ public class Main {
 //                rectiResults.getRectifiedImage2(),
 //                rectiResults.getRectifiedImagePoints1(),
 //                rectiResults.getRectifiedImagePoints2());
-//        imwrite("./res/output/epipolar/epipolar_output_3.jpg", result.get(2));
-//        imwrite("./res/output/epipolar/epipolar_output_4.jpg", result.get(3));
+//        imageWriter.write("./res/output/epipolar/epipolar_output_3", result.get(2));
+//        imageWriter.write("./res/output/epipolar/epipolar_output_4", result.get(3));
 
         // detects and matches keyPoints and draws epiLines in 1 combined image
 //        MatchingPointsDetector detector = new MatchingPointsDetector(image_1, image_2);
+//        detector.setImageWriter(imageWriter);
 //        detector.matchImages(calibrationModel.getCalibrationImagePoints1(), calibrationModel.getCalibrationImagePoints1());
 
         utils.mergeImagesAndDrawLine(rectiResults.getRectifiedImage1(), rectiResults.getRectifiedImage2(), rectiResults.getRectifiedImagePoints1(), rectiResults.getRectifiedImagePoints2());
+
+        imageWriter.close();
+        System.out.println(imageWriter);
     }
 
     /**
-     * Util function to load saved images from the /res folder
+     * Util function to list the saved calibration images of the /res folder
      *
-     * @return list of loaded image matrices
+     * @return list of image file names
      * @throws FileNotFoundException throws exception if file with the given name cant be found
      */
-    private static List<Mat> loadImages() throws FileNotFoundException {
-        List<Mat> images = new ArrayList<>();
+    private static List<String> loadImageNames() throws FileNotFoundException {
+        List<String> fileNames = new ArrayList<>();
         for (int i = 0; i < 32; i++) {
-            String currImageName = "calib" + i + ".jpg";
-
-            // Load image
-            Mat image = Imgcodecs.imread(OUTPUT_PATH + "calibration/" + currImageName);
-            if (image.empty()) {
-                System.out.println(currImageName + " Error: File empty.");
-                throw new FileNotFoundException(OUTPUT_PATH + "calibration/" + currImageName);
+            String fileName = OUTPUT_PATH + "calibration/calib" + i + ".jpg";
+            if (!new File(fileName).isFile()) {
+                System.out.println(fileName + " Error: File not found.");
+                throw new FileNotFoundException(fileName);
             }
-            images.add(image);
+            fileNames.add(fileName);
         }
-        return images;
+        return fileNames;
     }
 
     /**
@@ -1,19 +1,47 @@
+import models.CalibrationVersionModel;
+import models.CanvasModel;
+import models.ProgressiveRectificationModel;
 import models.RectificationModel;
 import models.RectifyModel;
+import models.RemapModel;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Range;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
+import utils.CalibrationHolder;
+import utils.CalibrationRegistry;
+import utils.ParallelWarper;
+import utils.PointRectifier;
+import utils.RectificationKernel;
+import utils.RectificationMapCache;
+import utils.RectificationStore;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static org.opencv.calib3d.Calib3d.decomposeProjectionMatrix;
+import static org.opencv.calib3d.Calib3d.undistortPoints;
+import static org.opencv.core.CvType.CV_64F;
 
 public class Rectification {
+    private static final double PREVIEW_SCALE = 0.25;
+    private static final int CANVAS_VERSION = 2; // part of the store key, increased when 'computeCanvas' changes
+
+    private RectificationMapCache mapCache = new RectificationMapCache();
+    private final RectificationKernel kernel = new RectificationKernel();
+
+    private boolean cropToValidRoi = false;
+    private boolean fixedPointMaps = false;
+    private RectificationStore store;
 
     /**
      * Uses the implemented algorithm to rectify 2 given images
+     * the output size is computed from the rectified image corners (see 'computeCanvas')
      *
      * @param ppm1         projection matrix 1
      * @param ppm2         projection matrix 2
@@ -25,24 +53,513 @@ public class Rectification {
      */
     public RectificationModel doRectification(Mat ppm1, Mat ppm2, Mat image1, Mat image2, Mat imagePoints1, Mat imagePoints2) {
 
-        RectifyModel rectificationModel = rectify(ppm1, ppm2);
-
         // applies the transformation matrices calculated by 'rectify' to the given images
+        CanvasModel canvas = createCanvas(rectify(ppm1, ppm2), image1.size(), image2.size());
+        return warp(canvas, image1, image2, imagePoints1, imagePoints2, Imgproc.INTER_LINEAR);
+    }
+
+    /**
+     * Rectifies 2 given images with cached remap tables
+     * 'rectify' and the per pixel transformation are only computed once per pair of projection matrices,
+     * following calls with the same matrices only apply the cached tables
+     *
+     * @param ppm1         projection matrix 1
+     * @param ppm2         projection matrix 2
+     * @param image1       image to be rectified 1
+     * @param image2       image to be rectified 2
+     * @param imagePoints1 feature Points for image 1
+     * @param imagePoints2 feature Points for image 2
+     * @return RectificationModel with the rectified images and rectified image points
+     */
+    public RectificationModel doCachedRectification(Mat ppm1, Mat ppm2, Mat image1, Mat image2, Mat imagePoints1, Mat imagePoints2) {
+
+        RemapModel remapModel = mapCache.getOrCreate(ppm1, ppm2, image1.size(), image2.size(),
+                () -> createCanvas(rectify(ppm1, ppm2), image1.size(), image2.size()));
+        RectifyModel rectificationModel = remapModel.getRectifyModel();
+
+        return remap(remapModel, image1, image2,
+                transformPoints(imagePoints1, rectificationModel.getT1()),
+                transformPoints(imagePoints2, rectificationModel.getT2()));
+    }
+
+    /**
+     * Rectifies 2 given images of a rig with the remap tables cached in the registry
+     * (current canvas settings, the registry decides whether the tables are in the fixed point format)
+     *
+     * @param registry     calibrations of the rigs
+     * @param rigId        id of the rig the images were taken with
+     * @param image1       image to be rectified 1
+     * @param image2       image to be rectified 2
+     * @param imagePoints1 feature Points for image 1
+     * @param imagePoints2 feature Points for image 2
+     * @return RectificationModel with the rectified images and rectified image points, null if the rig can not be loaded
+     */
+    public RectificationModel doRigRectification(CalibrationRegistry registry, String rigId, Mat image1, Mat image2,
+                                                 Mat imagePoints1, Mat imagePoints2) {
+        RemapModel remapModel = registry.getRemapModel(rigId, image1.size(), image2.size(),
+                rectifyModel -> createCanvas(rectifyModel, image1.size(), image2.size()));
+        if (remapModel == null) {
+            return null;
+        }
+        RectifyModel rectificationModel = remapModel.getRectifyModel();
+
+        return remap(remapModel, image1, image2,
+                transformPoints(imagePoints1, rectificationModel.getT1()),
+                transformPoints(imagePoints2, rectificationModel.getT2()));
+    }
+
+    /**
+     * Rectifies 2 given images with the current calibration of the holder
+     * the calibration is read once without a lock, a version published while the frame is processed
+     * is used from the next frame on
+     *
+     * @param holder       current calibration (see 'publishCalibration')
+     * @param image1       image to be rectified 1
+     * @param image2       image to be rectified 2
+     * @param imagePoints1 feature Points for image 1
+     * @param imagePoints2 feature Points for image 2
+     * @return RectificationModel with the rectified images, rectified image points and the calibration version used,
+     * null if no calibration was published yet
+     */
+    public RectificationModel doHotSwapRectification(CalibrationHolder holder, Mat image1, Mat image2,
+                                                     Mat imagePoints1, Mat imagePoints2) {
+        CalibrationVersionModel calibration = holder.get();
+        if (calibration == null) {
+            System.out.println("Error: no calibration published");
+            return null;
+        }
+        RemapModel remapModel = calibration.getRemapModel();
+        RectifyModel rectificationModel = remapModel.getRectifyModel();
+
+        RectificationModel result = remap(remapModel, image1, image2,
+                transformPoints(imagePoints1, rectificationModel.getT1()),
+                transformPoints(imagePoints2, rectificationModel.getT2()));
+        result.setCalibrationVersion(calibration.getVersion());
+        return result;
+    }
+
+    /**
+     * Builds the transformation matrices and remap tables of new projection matrices and publishes them in the holder
+     * (current canvas and remap table settings)
+     *
+     * @param holder    holder the calibration is published in
+     * @param ppm1      projection matrix 1
+     * @param ppm2      projection matrix 2
+     * @param imageSize size of the images to be rectified
+     * @return published calibration
+     */
+    public CalibrationVersionModel publishCalibration(CalibrationHolder holder, Mat ppm1, Mat ppm2, Size imageSize) {
+        return buildCalibration(holder, holder.nextVersion(), ppm1.clone(), ppm2.clone(), imageSize);
+    }
+
+    /**
+     * Same as 'publishCalibration' in the background, the stream keeps using the current calibration until
+     * the new one is complete
+     * the version is reserved at once, if 2 re-calibrations overlap the later one wins
+     *
+     * @param holder    holder the calibration is published in
+     * @param ppm1      projection matrix 1 (copied before the call returns)
+     * @param ppm2      projection matrix 2 (copied before the call returns)
+     * @param imageSize size of the images to be rectified
+     * @param executor  executor building the remap tables
+     * @return pending calibration, completes after it was published (or found outdated)
+     */
+    public CompletableFuture<CalibrationVersionModel> publishCalibrationAsync(CalibrationHolder holder, Mat ppm1, Mat ppm2,
+                                                                             Size imageSize, Executor executor) {
+        long version = holder.nextVersion();
+        Mat copy1 = ppm1.clone();
+        Mat copy2 = ppm2.clone();
+        return CompletableFuture.supplyAsync(() -> buildCalibration(holder, version, copy1, copy2, imageSize), executor);
+    }
+
+    private CalibrationVersionModel buildCalibration(CalibrationHolder holder, long version, Mat ppm1, Mat ppm2, Size imageSize) {
+        CanvasModel canvas = createCanvas(rectifyPrimitive(ppm1, ppm2), imageSize, imageSize);
+        RemapModel remapModel = RectificationMapCache.createMaps(canvas, fixedPointMaps);
+        CalibrationVersionModel calibration = new CalibrationVersionModel(version, ppm1, ppm2, remapModel);
+        if (!holder.publish(calibration)) {
+            System.out.println("Calibration version " + version + " is outdated, keeping version " + holder.getVersion());
+        }
+        return calibration;
+    }
+
+    /**
+     * Rectifies 2 given images at the same time, each image is split into row bands warped in parallel
+     * on the pool of the given warper
+     *
+     * @param ppm1         projection matrix 1
+     * @param ppm2         projection matrix 2
+     * @param image1       image to be rectified 1
+     * @param image2       image to be rectified 2
+     * @param imagePoints1 feature Points for image 1
+     * @param imagePoints2 feature Points for image 2
+     * @param warper       warps the bands of both images
+     * @return RectificationModel with the rectified images and rectified image points
+     */
+    public RectificationModel doParallelRectification(Mat ppm1, Mat ppm2, Mat image1, Mat image2, Mat imagePoints1, Mat imagePoints2,
+                                                      ParallelWarper warper) {
+
+        CanvasModel canvas = createCanvas(rectifyPrimitive(ppm1, ppm2), image1.size(), image2.size());
+        RectifyModel rectificationModel = canvas.getRectifyModel();
+
+        List<Mat> rectifiedImages = warper.warpPair(
+                image1, rectificationModel.getT1(),
+                image2, rectificationModel.getT2(),
+                canvas.getSize());
+
+        RectificationModel result = new RectificationModel(
+                rectifiedImages.get(0), rectifiedImages.get(1),
+                transformPoints(imagePoints1, rectificationModel.getT1()),
+                transformPoints(imagePoints2, rectificationModel.getT2()));
+        result.setValidRoi(canvas.getValidRoi());
+        return result;
+    }
+
+    /**
+     * Rectifies 2 given images progressively: a preview at 1/4 of the output size is returned at once
+     * (the scaled transformation matrices only evaluate every 16th output pixel),
+     * the full resolution result is computed in the background on the given executor
+     *
+     * @param ppm1         projection matrix 1
+     * @param ppm2         projection matrix 2
+     * @param image1       image to be rectified 1
+     * @param image2       image to be rectified 2
+     * @param imagePoints1 feature Points for image 1
+     * @param imagePoints2 feature Points for image 2
+     * @param executor     executor for the full resolution rectification
+     * @return preview and the pending full resolution RectificationModel
+     */
+    public ProgressiveRectificationModel doProgressiveRectification(Mat ppm1, Mat ppm2, Mat image1, Mat image2,
+                                                                    Mat imagePoints1, Mat imagePoints2, Executor executor) {
+
+        CanvasModel canvas = createCanvas(rectifyPrimitive(ppm1, ppm2), image1.size(), image2.size());
+
+        // preview: downscale matrix * T, nearest neighbour as it is refined anyway
+        CanvasModel previewCanvas = scale(canvas, PREVIEW_SCALE);
+        RectificationModel preview = warp(previewCanvas, image1, image2, imagePoints1, imagePoints2, Imgproc.INTER_NEAREST);
+
+        CompletableFuture<RectificationModel> refined = CompletableFuture.supplyAsync(
+                () -> warp(canvas, image1, image2, imagePoints1, imagePoints2, Imgproc.INTER_LINEAR), executor);
+
+        return new ProgressiveRectificationModel(preview, PREVIEW_SCALE, refined);
+    }
+
+    /**
+     * Creates a rectifier for plain coordinates (tracks, detections, ...) without warping any image
+     * the points end up in the same output canvas as the images of 'doRectification'
+     *
+     * @param ppm1       projection matrix 1
+     * @param ppm2       projection matrix 2
+     * @param imageSize1 size of image 1
+     * @param imageSize2 size of image 2
+     * @return rectifier applying T1 and T2 to coordinate arrays
+     */
+    public PointRectifier createPointRectifier(Mat ppm1, Mat ppm2, Size imageSize1, Size imageSize2) {
+        CanvasModel canvas = createCanvas(rectifyPrimitive(ppm1, ppm2), imageSize1, imageSize2);
+        return new PointRectifier(canvas.getRectifyModel());
+    }
+
+    /**
+     * Warps both images and transforms the points with the matrices of the canvas
+     */
+    private static RectificationModel warp(CanvasModel canvas, Mat image1, Mat image2,
+                                           Mat imagePoints1, Mat imagePoints2, int interpolation) {
+        RectifyModel rectificationModel = canvas.getRectifyModel();
+
         Mat rectifiedImage1 = new Mat();
         Mat rectifiedImage2 = new Mat();
-        Imgproc.warpPerspective(image1, rectifiedImage1, rectificationModel.getT1(), new Size(1000, 500));
-        Imgproc.warpPerspective(image2, rectifiedImage2, rectificationModel.getT2(), new Size(1000, 500));
+        Imgproc.warpPerspective(image1, rectifiedImage1, rectificationModel.getT1(), canvas.getSize(), interpolation);
+        Imgproc.warpPerspective(image2, rectifiedImage2, rectificationModel.getT2(), canvas.getSize(), interpolation);
 
-        // Transform the image points:
-        Mat rectifiedImagePoints1 = new Mat();
-        Mat rectifiedImagePoints2 = new Mat();
+        RectificationModel result = new RectificationModel(
+                rectifiedImage1, rectifiedImage2,
+                transformPoints(imagePoints1, rectificationModel.getT1()),
+                transformPoints(imagePoints2, rectificationModel.getT2()));
+        result.setValidRoi(canvas.getValidRoi());
+        return result;
+    }
 
-        Core.perspectiveTransform(imagePoints1, rectifiedImagePoints1, rectificationModel.getT1());
-        Core.perspectiveTransform(imagePoints2, rectifiedImagePoints2, rectificationModel.getT2());
+    /**
+     * Applies the remap tables to both images, the points are already rectified by the caller
+     * (used by the cached, hot swap and undistorted rectification)
+     */
+    private static RectificationModel remap(RemapModel remapModel, Mat image1, Mat image2,
+                                            Mat rectifiedImagePoints1, Mat rectifiedImagePoints2) {
+        Mat rectifiedImage1 = new Mat();
+        Mat rectifiedImage2 = new Mat();
+        Imgproc.remap(image1, rectifiedImage1, remapModel.getMap1X(), remapModel.getMap1Y(), Imgproc.INTER_LINEAR);
+        Imgproc.remap(image2, rectifiedImage2, remapModel.getMap2X(), remapModel.getMap2Y(), Imgproc.INTER_LINEAR);
 
-        return new RectificationModel(
+        RectificationModel result = new RectificationModel(
                 rectifiedImage1, rectifiedImage2,
                 rectifiedImagePoints1, rectifiedImagePoints2);
+        result.setValidRoi(remapModel.getValidRoi());
+        return result;
+    }
+
+    /**
+     * Undistorts and rectifies 2 given (distorted) images in a single pass
+     * the camera parameters and the transformation matrices are combined into one cached remap table per camera,
+     * so no intermediate undistorted image is created
+     *
+     * @param ppm1         projection matrix 1
+     * @param ppm2         projection matrix 2
+     * @param intrinsic    camera matrix of the camera both images were taken with
+     * @param distCoeffs   distortion coefficients of the camera
+     * @param image1       image to be rectified 1
+     * @param image2       image to be rectified 2
+     * @param imagePoints1 feature Points for image 1 (distorted)
+     * @param imagePoints2 feature Points for image 2 (distorted)
+     * @return RectificationModel with the rectified images and rectified image points
+     */
+    public RectificationModel doUndistortedRectification(Mat ppm1, Mat ppm2, Mat intrinsic, Mat distCoeffs,
+                                                         Mat image1, Mat image2, Mat imagePoints1, Mat imagePoints2) {
+
+        RemapModel remapModel = mapCache.getOrCreateUndistorted(ppm1, ppm2, intrinsic, distCoeffs, image1.size(), image2.size(),
+                () -> createCanvas(rectify(ppm1, ppm2), image1.size(), image2.size()));
+        RectifyModel rectificationModel = remapModel.getRectifyModel();
+
+        // undistorts the points and projects them with T * intrinsic in one step
+        Mat newCameraMatrix1 = new Mat();
+        Mat newCameraMatrix2 = new Mat();
+        Core.gemm(rectificationModel.getT1(), intrinsic, 1, new Mat(), 0, newCameraMatrix1, 0);
+        Core.gemm(rectificationModel.getT2(), intrinsic, 1, new Mat(), 0, newCameraMatrix2, 0);
+
+        return remap(remapModel, image1, image2,
+                undistortAndTransformPoints(imagePoints1, intrinsic, distCoeffs, newCameraMatrix1),
+                undistortAndTransformPoints(imagePoints2, intrinsic, distCoeffs, newCameraMatrix2));
+    }
+
+    /**
+     * Applies the transformation matrix to the given points, null or empty points (images only) give an empty Mat
+     */
+    private static Mat transformPoints(Mat imagePoints, Mat transformation) {
+        Mat rectifiedImagePoints = new Mat();
+        if (imagePoints != null && !imagePoints.empty()) {
+            Core.perspectiveTransform(imagePoints, rectifiedImagePoints, transformation);
+        }
+        return rectifiedImagePoints;
+    }
+
+    /**
+     * Undistorts the given points and projects them with the new camera matrix (T * intrinsic),
+     * null or empty points (images only) give an empty Mat
+     */
+    private static Mat undistortAndTransformPoints(Mat imagePoints, Mat intrinsic, Mat distCoeffs, Mat newCameraMatrix) {
+        MatOfPoint2f rectifiedImagePoints = new MatOfPoint2f();
+        if (imagePoints != null && !imagePoints.empty()) {
+            undistortPoints(new MatOfPoint2f(imagePoints), rectifiedImagePoints, intrinsic, distCoeffs, new Mat(), newCameraMatrix);
+        }
+        return rectifiedImagePoints;
+    }
+
+    /**
+     * Output canvas of the rectified images for the current settings
+     * either the full bounding box of both rectified images or only their common valid region
+     */
+    private CanvasModel createCanvas(RectifyModel rectifyModel, Size imageSize1, Size imageSize2) {
+        CanvasModel canvas = computeCanvas(rectifyModel, imageSize1, imageSize2);
+        if (cropToValidRoi) {
+            canvas = cropToValidRoi(canvas);
+        }
+        return canvas;
+    }
+
+    /**
+     * Computes the output size from the positions of the image corners under T1 and T2
+     * both transformation matrices are moved by the same translation so the bounding box of both
+     * rectified images starts at (0, 0) and corresponding rows stay aligned
+     *
+     * @param rectifyModel transformation and projection matrices calculated by 'rectify'
+     * @param imageSize1   size of image 1
+     * @param imageSize2   size of image 2
+     * @return translated matrices, size of the bounding box and the region covered by both rectified images
+     */
+    public CanvasModel computeCanvas(RectifyModel rectifyModel, Size imageSize1, Size imageSize2) {
+        double[] corners1 = warpedCorners(rectifyModel.getT1(), imageSize1);
+        double[] corners2 = warpedCorners(rectifyModel.getT2(), imageSize2);
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (double[] corners : List.of(corners1, corners2)) {
+            for (int i = 0; i < corners.length; i += 2) {
+                minX = Math.min(minX, corners[i]);
+                maxX = Math.max(maxX, corners[i]);
+                minY = Math.min(minY, corners[i + 1]);
+                maxY = Math.max(maxY, corners[i + 1]);
+            }
+        }
+        // the corners are pixel centres, the canvas includes the pixels at both ends
+        minX = Math.floor(minX);
+        minY = Math.floor(minY);
+        Size size = new Size(Math.ceil(maxX) - minX + 1, Math.ceil(maxY) - minY + 1);
+
+        // common valid region = intersection of the inner rectangles of both warped images
+        Rect roi = intersect(innerRect(corners1), innerRect(corners2));
+        roi = intersect(new Rect((int) minX, (int) minY, (int) size.width, (int) size.height), roi);
+        roi = new Rect(roi.x - (int) minX, roi.y - (int) minY, roi.width, roi.height);
+
+        return new CanvasModel(translate(rectifyModel, -minX, -minY), size, roi);
+    }
+
+    /**
+     * Reduces the canvas to its valid region, so only pixels covered by both rectified images are computed
+     *
+     * @param canvas canvas computed by 'computeCanvas'
+     * @return canvas with the size of the valid region
+     */
+    public CanvasModel cropToValidRoi(CanvasModel canvas) {
+        Rect roi = canvas.getValidRoi();
+        if (roi.area() <= 0) {
+            System.out.println("Rectified images do not overlap, keeping the full canvas");
+            return canvas;
+        }
+        return new CanvasModel(translate(canvas.getRectifyModel(), -roi.x, -roi.y), roi.size(),
+                new Rect(0, 0, roi.width, roi.height));
+    }
+
+    /**
+     * @param cropToValidRoi whether the images are only warped into the region covered by both rectified images
+     */
+    public void setCropToValidRoi(boolean cropToValidRoi) {
+        if (this.cropToValidRoi != cropToValidRoi) {
+            this.cropToValidRoi = cropToValidRoi;
+            resetMapCache();
+        }
+    }
+
+    public boolean isCropToValidRoi() {
+        return cropToValidRoi;
+    }
+
+    /**
+     * @param fixedPoint whether cached remap tables are stored in the compact fixed point format
+     */
+    public void setFixedPointMaps(boolean fixedPoint) {
+        if (this.fixedPointMaps != fixedPoint) {
+            this.fixedPointMaps = fixedPoint;
+            resetMapCache();
+        }
+    }
+
+    public boolean isFixedPointMaps() {
+        return fixedPointMaps;
+    }
+
+    /**
+     * Persists the results of the cached modes (transformation matrices and remap tables) in the given store,
+     * a restart or another process with the same calibration loads them instead of calling 'rectify'
+     *
+     * @param store on-disk store or null to keep the results in memory only
+     */
+    public void setStore(RectificationStore store) {
+        this.store = store;
+        resetMapCache();
+    }
+
+    private void resetMapCache() {
+        mapCache = new RectificationMapCache(fixedPointMaps, store,
+                "canvas" + CANVAS_VERSION + ";" + (cropToValidRoi ? "crop" : "full"));
+    }
+
+    /**
+     * Transforms the corners (top left, top right, bottom right, bottom left) of an image
+     *
+     * @return x and y coordinates of the transformed corners
+     */
+    private static double[] warpedCorners(Mat homography, Size imageSize) {
+        double[] h = new double[9];
+        homography.get(0, 0, h);
+        double right = imageSize.width - 1;
+        double bottom = imageSize.height - 1;
+        double[] corners = {0, 0, right, 0, right, bottom, 0, bottom};
+        for (int i = 0; i < corners.length; i += 2) {
+            double x = corners[i];
+            double y = corners[i + 1];
+            double w = h[6] * x + h[7] * y + h[8];
+            corners[i] = (h[0] * x + h[1] * y + h[2]) / w;
+            corners[i + 1] = (h[3] * x + h[4] * y + h[5]) / w;
+        }
+        return corners;
+    }
+
+    /**
+     * Axis aligned rectangle inside the quadrilateral given by 'warpedCorners',
+     * spanned by the inner two x and y coordinates of the corners
+     * (independent of the corner order, the rectified image can be rotated by 'rectify')
+     */
+    private static Rect innerRect(double[] corners) {
+        double[] xs = {corners[0], corners[2], corners[4], corners[6]};
+        double[] ys = {corners[1], corners[3], corners[5], corners[7]};
+        Arrays.sort(xs);
+        Arrays.sort(ys);
+        int left = (int) Math.ceil(xs[1]);
+        int top = (int) Math.ceil(ys[1]);
+        int right = (int) Math.floor(xs[2]);
+        int bottom = (int) Math.floor(ys[2]);
+        return new Rect(left, top, Math.max(0, right - left + 1), Math.max(0, bottom - top + 1));
+    }
+
+    private static Rect intersect(Rect a, Rect b) {
+        int left = Math.max(a.x, b.x);
+        int top = Math.max(a.y, b.y);
+        int right = Math.min(a.x + a.width, b.x + b.width);
+        int bottom = Math.min(a.y + a.height, b.y + b.height);
+        return new Rect(left, top, Math.max(0, right - left), Math.max(0, bottom - top));
+    }
+
+    /**
+     * Moves the rectified image plane by the given offset, i.e. left multiplies all matrices with a translation
+     */
+    private static RectifyModel translate(RectifyModel rectifyModel, double dx, double dy) {
+        return new RectifyModel(
+                translate(rectifyModel.getT1(), dx, dy),
+                translate(rectifyModel.getT2(), dx, dy),
+                translate(rectifyModel.getPn1(), dx, dy),
+                translate(rectifyModel.getPn2(), dx, dy));
+    }
+
+    /**
+     * Scales the canvas and its matrices, i.e. left multiplies all matrices with diag(factor, factor, 1)
+     */
+    private static CanvasModel scale(CanvasModel canvas, double factor) {
+        RectifyModel rectifyModel = canvas.getRectifyModel();
+        RectifyModel scaled = new RectifyModel(
+                scale(rectifyModel.getT1(), factor),
+                scale(rectifyModel.getT2(), factor),
+                scale(rectifyModel.getPn1(), factor),
+                scale(rectifyModel.getPn2(), factor));
+        Size size = new Size(Math.ceil(canvas.getSize().width * factor), Math.ceil(canvas.getSize().height * factor));
+        Rect roi = canvas.getValidRoi();
+        Rect scaledRoi = new Rect((int) Math.ceil(roi.x * factor), (int) Math.ceil(roi.y * factor),
+                (int) Math.floor(roi.width * factor), (int) Math.floor(roi.height * factor));
+        return new CanvasModel(scaled, size, scaledRoi);
+    }
+
+    private static Mat scale(Mat m, double factor) {
+        int cols = m.cols();
+        double[] values = new double[3 * cols];
+        m.get(0, 0, values);
+        for (int i = 0; i < 2 * cols; i++) {
+            values[i] *= factor;
+        }
+        Mat result = new Mat(3, cols, CV_64F);
+        result.put(0, 0, values);
+        return result;
+    }
+
+    private static Mat translate(Mat m, double dx, double dy) {
+        int cols = m.cols();
+        double[] values = new double[3 * cols];
+        m.get(0, 0, values);
+        for (int col = 0; col < cols; col++) {
+            values[col] += dx * values[2 * cols + col];
+            values[cols + col] += dy * values[2 * cols + col];
+        }
+        Mat result = new Mat(3, cols, CV_64F);
+        result.put(0, 0, values);
+        return result;
     }
 
     /**
@@ -130,4 +647,17 @@ public class Rectification {
         return new RectifyModel(T1, T2, Pn1, Pn2);
     }
 
+    /**
+     * Same algorithm as 'rectify' computed on primitive arrays without temporary native matrices
+     * (only the 4 resulting matrices are allocated)
+     *
+     * @param Po1 projection matrix of image/camera 1
+     * @param Po2 projection matrix of image/camera 2
+     * @return resulting projection & transformation matrices
+     */
+    public RectifyModel rectifyPrimitive(Mat Po1, Mat Po2) {
+        synchronized (kernel) {
+            return kernel.rectify(Po1, Po2);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package benchmark;
+
+import models.SyntheticViewModel;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import utils.SyntheticSceneGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.opencv.calib3d.Calib3d.*;
+
+/**
+ * Measures chessboard detection and 'calibrateCamera' on synthetic views with known ground truth
+ * for growing image sizes and view counts (detection uses the same settings as 'Calibration')
+ * usage: CalibrationBenchmark [views] [width ...]
+ */
+public class CalibrationBenchmark {
+    private static final Size CHESSBOARD_DIMENSIONS = new Size(9, 6);
+    private static final float SQUARE_SIZE = 0.0245f; // meters
+
+    public static void main(String[] args) {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int views = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        List<Integer> widths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            widths.add(Integer.parseInt(args[i]));
+        }
+        if (widths.isEmpty()) {
+            widths = List.of(640, 1280, 2560);
+        }
+
+        for (int width : widths) {
+            Size imageSize = new Size(width, width * 3 / 4);
+            Mat intrinsic = SyntheticSceneGenerator.defaultIntrinsic(imageSize);
+            Mat distCoeffs = SyntheticSceneGenerator.defaultDistCoeffs();
+            SyntheticSceneGenerator generator = new SyntheticSceneGenerator(imageSize, CHESSBOARD_DIMENSIONS, SQUARE_SIZE,
+                    intrinsic, distCoeffs, 42);
+
+            long start = System.nanoTime();
+            List<SyntheticViewModel> scene = generator.generate(views);
+            double renderMillis = (System.nanoTime() - start) / 1e6;
+
+            // detection and corner error against the ground truth
+            List<Mat> imagePoints = new ArrayList<>();
+            List<Mat> objectPoints = new ArrayList<>();
+            double cornerError = 0;
+            start = System.nanoTime();
+            for (SyntheticViewModel view : scene) {
+                Mat gray = new Mat();
+                Imgproc.cvtColor(view.getImage(), gray, Imgproc.COLOR_BGR2GRAY);
+                MatOfPoint2f corners = new MatOfPoint2f();
+                if (findChessboardCorners(gray, CHESSBOARD_DIMENSIONS, corners, CALIB_CB_ADAPTIVE_THRESH | CALIB_CB_NORMALIZE_IMAGE)) {
+                    TermCriteria term = new TermCriteria(TermCriteria.EPS | TermCriteria.MAX_ITER, 30, 0.1);
+                    Imgproc.cornerSubPix(gray, corners, new Size(11, 11), new Size(-1, -1), term);
+                    imagePoints.add(corners);
+                    objectPoints.add(generator.objectPoints());
+                    double norm = Core.norm(corners, view.getCorners(), Core.NORM_L2);
+                    cornerError += norm * norm;
+                }
+            }
+            double detectMillis = (System.nanoTime() - start) / 1e6;
+            int found = imagePoints.size();
+            cornerError = found > 0 ? Math.sqrt(cornerError / (found * CHESSBOARD_DIMENSIONS.area())) : 0;
+
+            // calibration and error of the estimated camera parameters
+            Mat estimatedIntrinsic = Mat.eye(3, 3, CvType.CV_64F);
+            Mat estimatedDistCoeffs = Mat.zeros(5, 1, CvType.CV_64F);
+            start = System.nanoTime();
+            double rms = found > 2 ? calibrateCamera(objectPoints, imagePoints, imageSize, estimatedIntrinsic, estimatedDistCoeffs,
+                    new ArrayList<>(), new ArrayList<>()) : Double.NaN;
+            double calibrateMillis = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%dx%d, %d views: render %.0f ms, detect %.1f ms/view (%d found, corner rms %.3f px), "
+                            + "calibrate %.0f ms (rms %.3f px, fx error %.2f px, cx error %.2f px, cy error %.2f px)%n",
+                    (int) imageSize.width, (int) imageSize.height, views, renderMillis, detectMillis / views, found, cornerError,
+                    calibrateMillis, rms,
+                    estimatedIntrinsic.get(0, 0)[0] - intrinsic.get(0, 0)[0],
+                    estimatedIntrinsic.get(0, 2)[0] - intrinsic.get(0, 2)[0],
+                    estimatedIntrinsic.get(1, 2)[0] - intrinsic.get(1, 2)[0]);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import utils.CalibrationUtils;
+import utils.PointRectifier;
+import utils.RectificationKernel;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares PointRectifier with Core.perspectiveTransform for large point batches
+ * usage: PointRectificationBenchmark [points] [iterations] [projection matrices file]
+ */
+public class PointRectificationBenchmark {
+
+    public static void main(String[] args) {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int points = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String fileName = args.length > 2 ? args[2] : "projectionMatrices";
+
+        List<Mat> ppms = CalibrationUtils.loadPPM(fileName, new Mat(), new Mat());
+        double[] po1 = new double[12];
+        double[] po2 = new double[12];
+        ppms.get(0).get(0, 0, po1);
+        ppms.get(1).get(0, 0, po2);
+        double[] t1 = new double[9];
+        double[] t2 = new double[9];
+        new RectificationKernel().rectify(po1, po2, t1, t2, new double[12], new double[12]);
+        PointRectifier rectifier = new PointRectifier(t1, t2);
+
+        Random random = new Random(42);
+        float[] src = new float[2 * points];
+        for (int i = 0; i < src.length; i += 2) {
+            src[i] = random.nextFloat() * 640;
+            src[i + 1] = random.nextFloat() * 480;
+        }
+        float[] dst = new float[2 * points];
+
+        // perspectiveTransform including the copies from and to java arrays
+        Mat homography = new Mat(3, 3, CvType.CV_64F);
+        homography.put(0, 0, t1);
+        Mat srcMat = new Mat(points, 1, CvType.CV_32FC2);
+        Mat dstMat = new Mat();
+        float[] dstOpenCV = new float[2 * points];
+        double openCV = RemapBenchmark.measure(iterations, () -> {
+            srcMat.put(0, 0, src);
+            Core.perspectiveTransform(srcMat, dstMat, homography);
+            dstMat.get(0, 0, dstOpenCV);
+        });
+        double openCVOnly = RemapBenchmark.measure(iterations, () -> Core.perspectiveTransform(srcMat, dstMat, homography));
+        double primitive = RemapBenchmark.measure(iterations, () -> rectifier.rectifyPoints1(src, dst, points));
+
+        double maxDifference = 0;
+        for (int i = 0; i < dst.length; i++) {
+            maxDifference = Math.max(maxDifference, Math.abs(dst[i] - dstOpenCV[i]));
+        }
+        System.out.printf("perspectiveTransform (with copies): %.2fms (%.1f Mpoints/s)%n", openCV, points / openCV / 1000);
+        System.out.printf("perspectiveTransform (Mat only):    %.2fms (%.1f Mpoints/s)%n", openCVOnly, points / openCVOnly / 1000);
+        System.out.printf("PointRectifier:                     %.2fms (%.1f Mpoints/s)%n", primitive, points / primitive / 1000);
+        System.out.printf("max difference: %.6f px%n", maxDifference);
+    }
+}
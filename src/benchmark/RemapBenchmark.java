@@ -0,0 +1,96 @@
+package benchmark;
+
+import models.RectifyModel;
+import models.RemapModel;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import utils.CalibrationUtils;
+import utils.RectificationMapCache;
+
+import java.io.File;
+
+/**
+ * Compares memory footprint and remap throughput of float and fixed point remap tables
+ * (and warpPerspective as baseline) for one synthetic image
+ * usage: RemapBenchmark [width] [height] [iterations]
+ */
+public class RemapBenchmark {
+
+    public static void main(String[] args) {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        Size size = new Size(width, height);
+
+        Mat image = new Mat(height, width, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+
+        // slightly rotated and tilted view, similar to a rectifying transformation
+        Mat homography = new Mat(3, 3, CvType.CV_64F);
+        double angle = Math.toRadians(2);
+        homography.put(0, 0,
+                Math.cos(angle), -Math.sin(angle), width * 0.02,
+                Math.sin(angle), Math.cos(angle), -height * 0.01,
+                2e-6, 1e-6, 1);
+
+        Mat mapX = new Mat();
+        Mat mapY = new Mat();
+        long start = System.nanoTime();
+        RectificationMapCache.buildMaps(homography, size, mapX, mapY);
+        System.out.printf("build float maps: %.2fms%n", (System.nanoTime() - start) / 1e6);
+        RemapModel floatMaps = new RemapModel(null, size, mapX, mapY, mapX, mapY);
+
+        start = System.nanoTime();
+        RemapModel fixedMaps = RectificationMapCache.toFixedPoint(floatMaps);
+        System.out.printf("convert to fixed point: %.2fms%n", (System.nanoTime() - start) / 1e6);
+
+        // one camera = half of the tables of the model
+        System.out.printf("memory per camera: float %.1f MB, fixed point %.1f MB%n",
+                floatMaps.getMemoryBytes() / 2 / 1e6, fixedMaps.getMemoryBytes() / 2 / 1e6);
+
+        Mat dst = new Mat();
+        double warp = measure(iterations, () -> Imgproc.warpPerspective(image, dst, homography, size));
+        double remapFloat = measure(iterations, () -> Imgproc.remap(image, dst, mapX, mapY, Imgproc.INTER_LINEAR));
+        double remapFixed = measure(iterations, () ->
+                Imgproc.remap(image, dst, fixedMaps.getMap1X(), fixedMaps.getMap1Y(), Imgproc.INTER_LINEAR));
+        double megapixels = width * (double) height / 1e6;
+        System.out.printf("warpPerspective:   %.2fms (%.1f MP/s)%n", warp, megapixels / warp * 1000);
+        System.out.printf("remap float:       %.2fms (%.1f MP/s)%n", remapFloat, megapixels / remapFloat * 1000);
+        System.out.printf("remap fixed point: %.2fms (%.1f MP/s)%n", remapFixed, megapixels / remapFixed * 1000);
+
+        String fileName = "remap_benchmark.bin";
+        start = System.nanoTime();
+        CalibrationUtils.saveRemapModel(fileName, withIdentity(fixedMaps));
+        System.out.printf("save fixed point maps: %.2fms%n", (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        CalibrationUtils.loadRemapModel(fileName);
+        System.out.printf("load fixed point maps: %.2fms%n", (System.nanoTime() - start) / 1e6);
+        new File(fileName).delete();
+    }
+
+    /**
+     * @return mean time of one run in milliseconds (after one warm up run)
+     */
+    static double measure(int iterations, Runnable run) {
+        run.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            run.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    private static RemapModel withIdentity(RemapModel remapModel) {
+        Mat identity = Mat.eye(3, 3, CvType.CV_64F);
+        Mat projection = Mat.eye(3, 4, CvType.CV_64F);
+        RemapModel result = new RemapModel(new RectifyModel(identity, identity, projection, projection),
+                remapModel.getSize(), remapModel.getMap1X(), remapModel.getMap1Y(), remapModel.getMap2X(), remapModel.getMap2Y());
+        result.setValidRoi(remapModel.getValidRoi());
+        return result;
+    }
+}
@@ -7,13 +7,13 @@ import org.opencv.features2d.FastFeatureDetector;
 import org.opencv.features2d.Features2d;
 import org.opencv.features2d.ORB;
 import org.opencv.utils.Converters;
+import utils.ImageWriter;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.opencv.core.CvType.CV_32F;
 import static org.opencv.core.CvType.CV_8U;
-import static org.opencv.imgcodecs.Imgcodecs.imwrite;
 
 /**
  * Detects and matches feature points in 2 given images
@@ -26,6 +26,7 @@ public class MatchingPointsDetector {
 
     private final Mat img1;
     private final Mat img2;
+    private ImageWriter imageWriter = ImageWriter.synchronous();
 
     public MatchingPointsDetector(Mat img1, Mat img2) {
         this.img1 = img1;
@@ -74,10 +75,17 @@ public class MatchingPointsDetector {
         Mat outImg = new Mat(img1.rows(), img1.cols() * 2, img1.type());
         Features2d.drawMatches(img1, keyPoints1, img2, keyPoints2, goodMatches, outImg);
 
-        imwrite("./res/output/epipolar/combined_epipolar.jpg", outImg);
+        imageWriter.write("./res/output/epipolar/combined_epipolar", outImg);
 
     }
 
+    /**
+     * @param imageWriter writer of the output images (codec, quality and encoder threads)
+     */
+    public void setImageWriter(ImageWriter imageWriter) {
+        this.imageWriter = imageWriter;
+    }
+
     private void extractAndSortGoodMatchPoints(MatOfKeyPoint srcPoints, MatOfKeyPoint dstPoints, MatOfDMatch goodMatches,
                                                MatOfPoint2f srcFilteredMat, MatOfPoint2f dstFilteredMat) {
         DMatch[] dm = goodMatches.toArray();
@@ -0,0 +1,75 @@
+package models;
+
+import utils.LatencyRecorder;
+
+public class BatchReportModel {
+    private int processedPairs;
+    private int failedPairs;
+    private double elapsedSeconds;
+
+    private LatencyRecorder decodeLatency;
+    private LatencyRecorder rectifyLatency;
+    private LatencyRecorder encodeLatency;
+
+    public BatchReportModel(int processedPairs, int failedPairs, double elapsedSeconds,
+                            LatencyRecorder decodeLatency, LatencyRecorder rectifyLatency, LatencyRecorder encodeLatency) {
+        this.processedPairs = processedPairs;
+        this.failedPairs = failedPairs;
+        this.elapsedSeconds = elapsedSeconds;
+        this.decodeLatency = decodeLatency;
+        this.rectifyLatency = rectifyLatency;
+        this.encodeLatency = encodeLatency;
+    }
+
+    public double getPairsPerSecond() {
+        return elapsedSeconds > 0 ? processedPairs / elapsedSeconds : 0;
+    }
+
+    public int getProcessedPairs() {
+        return processedPairs;
+    }
+
+    public void setProcessedPairs(int processedPairs) {
+        this.processedPairs = processedPairs;
+    }
+
+    public int getFailedPairs() {
+        return failedPairs;
+    }
+
+    public void setFailedPairs(int failedPairs) {
+        this.failedPairs = failedPairs;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    public void setElapsedSeconds(double elapsedSeconds) {
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    public LatencyRecorder getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    public void setDecodeLatency(LatencyRecorder decodeLatency) {
+        this.decodeLatency = decodeLatency;
+    }
+
+    public LatencyRecorder getRectifyLatency() {
+        return rectifyLatency;
+    }
+
+    public void setRectifyLatency(LatencyRecorder rectifyLatency) {
+        this.rectifyLatency = rectifyLatency;
+    }
+
+    public LatencyRecorder getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    public void setEncodeLatency(LatencyRecorder encodeLatency) {
+        this.encodeLatency = encodeLatency;
+    }
+}
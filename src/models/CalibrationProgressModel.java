@@ -0,0 +1,79 @@
+package models;
+
+import org.opencv.core.Mat;
+
+/**
+ * Result of one incremental calibration step
+ * relative change = largest relative change of fx, fy, cx, cy compared to the previous step
+ */
+public class CalibrationProgressModel {
+    private int views;
+    private double rmsError;
+    private double relativeChange;
+    private boolean converged;
+    private Mat intrinsic;
+    private Mat distCoeffs;
+
+    public CalibrationProgressModel(int views, double rmsError, double relativeChange, boolean converged, Mat intrinsic, Mat distCoeffs) {
+        this.views = views;
+        this.rmsError = rmsError;
+        this.relativeChange = relativeChange;
+        this.converged = converged;
+        this.intrinsic = intrinsic;
+        this.distCoeffs = distCoeffs;
+    }
+
+    public int getViews() {
+        return views;
+    }
+
+    public void setViews(int views) {
+        this.views = views;
+    }
+
+    public double getRmsError() {
+        return rmsError;
+    }
+
+    public void setRmsError(double rmsError) {
+        this.rmsError = rmsError;
+    }
+
+    public double getRelativeChange() {
+        return relativeChange;
+    }
+
+    public void setRelativeChange(double relativeChange) {
+        this.relativeChange = relativeChange;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public void setConverged(boolean converged) {
+        this.converged = converged;
+    }
+
+    public Mat getIntrinsic() {
+        return intrinsic;
+    }
+
+    public void setIntrinsic(Mat intrinsic) {
+        this.intrinsic = intrinsic;
+    }
+
+    public Mat getDistCoeffs() {
+        return distCoeffs;
+    }
+
+    public void setDistCoeffs(Mat distCoeffs) {
+        this.distCoeffs = distCoeffs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("views: %d, rms: %.4f, change: %.3f%%%s",
+                views, rmsError, relativeChange * 100, converged ? " (converged)" : "");
+    }
+}
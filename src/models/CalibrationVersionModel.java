@@ -0,0 +1,44 @@
+package models;
+
+import org.opencv.core.Mat;
+
+/**
+ * One published calibration: projection matrices and the remap tables derived from them
+ * the fields are final and the matrices are never written after publication, so a frame that read this version
+ * can keep using it while a newer version is published
+ */
+public class CalibrationVersionModel {
+    private final long version;
+    private final Mat ppm1;
+    private final Mat ppm2;
+    private final RemapModel remapModel;
+
+    public CalibrationVersionModel(long version, Mat ppm1, Mat ppm2, RemapModel remapModel) {
+        this.version = version;
+        this.ppm1 = ppm1;
+        this.ppm2 = ppm2;
+        this.remapModel = remapModel;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Mat getPpm1() {
+        return ppm1;
+    }
+
+    public Mat getPpm2() {
+        return ppm2;
+    }
+
+    public RemapModel getRemapModel() {
+        return remapModel;
+    }
+
+    @Override
+    public String toString() {
+        return "calibration version " + version + " (" + (int) remapModel.getSize().width + "x"
+                + (int) remapModel.getSize().height + ")";
+    }
+}
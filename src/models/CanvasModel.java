@@ -0,0 +1,40 @@
+package models;
+
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+public class CanvasModel {
+    private RectifyModel rectifyModel;
+    private Size size;
+    private Rect validRoi;
+
+    public CanvasModel(RectifyModel rectifyModel, Size size, Rect validRoi) {
+        this.rectifyModel = rectifyModel;
+        this.size = size;
+        this.validRoi = validRoi;
+    }
+
+    public RectifyModel getRectifyModel() {
+        return rectifyModel;
+    }
+
+    public void setRectifyModel(RectifyModel rectifyModel) {
+        this.rectifyModel = rectifyModel;
+    }
+
+    public Size getSize() {
+        return size;
+    }
+
+    public void setSize(Size size) {
+        this.size = size;
+    }
+
+    public Rect getValidRoi() {
+        return validRoi;
+    }
+
+    public void setValidRoi(Rect validRoi) {
+        this.validRoi = validRoi;
+    }
+}
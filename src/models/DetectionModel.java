@@ -0,0 +1,43 @@
+package models;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+
+/**
+ * Chessboard detection result of one camera frame
+ */
+public class DetectionModel {
+    private Mat frame;
+    private MatOfPoint2f corners;
+    private boolean found;
+
+    public DetectionModel(Mat frame, MatOfPoint2f corners, boolean found) {
+        this.frame = frame;
+        this.corners = corners;
+        this.found = found;
+    }
+
+    public Mat getFrame() {
+        return frame;
+    }
+
+    public void setFrame(Mat frame) {
+        this.frame = frame;
+    }
+
+    public MatOfPoint2f getCorners() {
+        return corners;
+    }
+
+    public void setCorners(MatOfPoint2f corners) {
+        this.corners = corners;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public void setFound(boolean found) {
+        this.found = found;
+    }
+}
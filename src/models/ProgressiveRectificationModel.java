@@ -0,0 +1,40 @@
+package models;
+
+import java.util.concurrent.CompletableFuture;
+
+public class ProgressiveRectificationModel {
+    private RectificationModel preview;
+    private double previewScale;
+    private CompletableFuture<RectificationModel> refined;
+
+    public ProgressiveRectificationModel(RectificationModel preview, double previewScale,
+                                         CompletableFuture<RectificationModel> refined) {
+        this.preview = preview;
+        this.previewScale = previewScale;
+        this.refined = refined;
+    }
+
+    public RectificationModel getPreview() {
+        return preview;
+    }
+
+    public void setPreview(RectificationModel preview) {
+        this.preview = preview;
+    }
+
+    public double getPreviewScale() {
+        return previewScale;
+    }
+
+    public void setPreviewScale(double previewScale) {
+        this.previewScale = previewScale;
+    }
+
+    public CompletableFuture<RectificationModel> getRefined() {
+        return refined;
+    }
+
+    public void setRefined(CompletableFuture<RectificationModel> refined) {
+        this.refined = refined;
+    }
+}
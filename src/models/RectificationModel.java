@@ -1,6 +1,7 @@
 package models;
 
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 
 public class RectificationModel {
     private Mat rectifiedImage1;
@@ -9,6 +10,9 @@ public class RectificationModel {
     private Mat rectifiedImagePoints1;
     private Mat rectifiedImagePoints2;
 
+    private Rect validRoi;
+    private long calibrationVersion;
+
     public RectificationModel(Mat rectifiedImage1, Mat rectifiedImage2, Mat rectifiedImagePoints1, Mat rectifiedImagePoints2) {
         this.rectifiedImage1 = rectifiedImage1;
         this.rectifiedImage2 = rectifiedImage2;
@@ -47,4 +51,23 @@ public class RectificationModel {
     public void setRectifiedImagePoints2(Mat rectifiedImagePoints2) {
         this.rectifiedImagePoints2 = rectifiedImagePoints2;
     }
+
+    public Rect getValidRoi() {
+        return validRoi;
+    }
+
+    public void setValidRoi(Rect validRoi) {
+        this.validRoi = validRoi;
+    }
+
+    /**
+     * @return version of the calibration the images were rectified with (see 'CalibrationHolder'), 0 if not published
+     */
+    public long getCalibrationVersion() {
+        return calibrationVersion;
+    }
+
+    public void setCalibrationVersion(long calibrationVersion) {
+        this.calibrationVersion = calibrationVersion;
+    }
 }
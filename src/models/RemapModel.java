@@ -0,0 +1,101 @@
+package models;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+/**
+ * Remap tables of a stereo pair, either as float planes (map X = CV_32FC1 x coordinates, map Y = CV_32FC1 y coordinates)
+ * or in fixed point format (map X = CV_16SC2 integer coordinates, map Y = CV_16UC1 interpolation table index)
+ */
+public class RemapModel {
+    private RectifyModel rectifyModel;
+    private Size size;
+    private Rect validRoi;
+
+    private Mat map1X;
+    private Mat map1Y;
+    private Mat map2X;
+    private Mat map2Y;
+
+    public RemapModel(RectifyModel rectifyModel, Size size, Mat map1X, Mat map1Y, Mat map2X, Mat map2Y) {
+        this.rectifyModel = rectifyModel;
+        this.size = size;
+        this.map1X = map1X;
+        this.map1Y = map1Y;
+        this.map2X = map2X;
+        this.map2Y = map2Y;
+    }
+
+    public RectifyModel getRectifyModel() {
+        return rectifyModel;
+    }
+
+    public void setRectifyModel(RectifyModel rectifyModel) {
+        this.rectifyModel = rectifyModel;
+    }
+
+    public Size getSize() {
+        return size;
+    }
+
+    public void setSize(Size size) {
+        this.size = size;
+    }
+
+    public Mat getMap1X() {
+        return map1X;
+    }
+
+    public void setMap1X(Mat map1X) {
+        this.map1X = map1X;
+    }
+
+    public Mat getMap1Y() {
+        return map1Y;
+    }
+
+    public void setMap1Y(Mat map1Y) {
+        this.map1Y = map1Y;
+    }
+
+    public Mat getMap2X() {
+        return map2X;
+    }
+
+    public void setMap2X(Mat map2X) {
+        this.map2X = map2X;
+    }
+
+    public Mat getMap2Y() {
+        return map2Y;
+    }
+
+    public void setMap2Y(Mat map2Y) {
+        this.map2Y = map2Y;
+    }
+
+    public Rect getValidRoi() {
+        return validRoi;
+    }
+
+    public void setValidRoi(Rect validRoi) {
+        this.validRoi = validRoi;
+    }
+
+    public boolean isFixedPoint() {
+        return map1X.type() == CvType.CV_16SC2;
+    }
+
+    /**
+     * @return number of bytes used by the remap tables of both cameras
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Mat map : new Mat[]{map1X, map1Y, map2X, map2Y}) {
+            bytes += map.total() * map.elemSize();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,93 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Reprojection errors of the views used for a calibration and the views rejected as outliers
+ * view and corner errors are in the order of the used views
+ */
+public class ReprojectionReportModel {
+    private List<Integer> views;
+    private List<Integer> rejectedViews;
+    private double[] viewErrors;
+    private double[][] cornerErrors;
+    private double rmsError;
+    private int solves;
+
+    public ReprojectionReportModel(List<Integer> views, List<Integer> rejectedViews, double[] viewErrors,
+                                   double[][] cornerErrors, double rmsError, int solves) {
+        this.views = views;
+        this.rejectedViews = rejectedViews;
+        this.viewErrors = viewErrors;
+        this.cornerErrors = cornerErrors;
+        this.rmsError = rmsError;
+        this.solves = solves;
+    }
+
+    public List<Integer> getViews() {
+        return views;
+    }
+
+    public void setViews(List<Integer> views) {
+        this.views = views;
+    }
+
+    public List<Integer> getRejectedViews() {
+        return rejectedViews;
+    }
+
+    public void setRejectedViews(List<Integer> rejectedViews) {
+        this.rejectedViews = rejectedViews;
+    }
+
+    public double[] getViewErrors() {
+        return viewErrors;
+    }
+
+    public void setViewErrors(double[] viewErrors) {
+        this.viewErrors = viewErrors;
+    }
+
+    public double[][] getCornerErrors() {
+        return cornerErrors;
+    }
+
+    public void setCornerErrors(double[][] cornerErrors) {
+        this.cornerErrors = cornerErrors;
+    }
+
+    public double getRmsError() {
+        return rmsError;
+    }
+
+    public void setRmsError(double rmsError) {
+        this.rmsError = rmsError;
+    }
+
+    public int getSolves() {
+        return solves;
+    }
+
+    public void setSolves(int solves) {
+        this.solves = solves;
+    }
+
+    /**
+     * @return index of the used view with the largest error or -1 if there are no views
+     */
+    public int getWorstView() {
+        int worst = -1;
+        for (int i = 0; i < viewErrors.length; i++) {
+            if (worst < 0 || viewErrors[i] > viewErrors[worst]) {
+                worst = i;
+            }
+        }
+        return worst < 0 ? -1 : views.get(worst);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Reprojection rms: %.4f with %d views after %d solves, worst view: %d, rejected views: %s",
+                rmsError, views.size(), solves, getWorstView(), rejectedViews);
+    }
+}
@@ -0,0 +1,129 @@
+package models;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+/**
+ * Calibration of one stereo rig: camera parameters, projection matrices, the derived rectification
+ * and the remap tables built from it
+ */
+public class RigCalibrationModel {
+    private String rigId;
+    private Mat intrinsic;
+    private Mat distCoeffs;
+    private Mat ppm1;
+    private Mat ppm2;
+    private RectifyModel rectifyModel;
+    private RemapModel remapModel;
+    private Size imageSize1;
+    private Size imageSize2;
+
+    public RigCalibrationModel(String rigId, Mat intrinsic, Mat distCoeffs, Mat ppm1, Mat ppm2) {
+        this.rigId = rigId;
+        this.intrinsic = intrinsic;
+        this.distCoeffs = distCoeffs;
+        this.ppm1 = ppm1;
+        this.ppm2 = ppm2;
+    }
+
+    public String getRigId() {
+        return rigId;
+    }
+
+    public void setRigId(String rigId) {
+        this.rigId = rigId;
+    }
+
+    public Mat getIntrinsic() {
+        return intrinsic;
+    }
+
+    public void setIntrinsic(Mat intrinsic) {
+        this.intrinsic = intrinsic;
+    }
+
+    public Mat getDistCoeffs() {
+        return distCoeffs;
+    }
+
+    public void setDistCoeffs(Mat distCoeffs) {
+        this.distCoeffs = distCoeffs;
+    }
+
+    public Mat getPpm1() {
+        return ppm1;
+    }
+
+    public void setPpm1(Mat ppm1) {
+        this.ppm1 = ppm1;
+    }
+
+    public Mat getPpm2() {
+        return ppm2;
+    }
+
+    public void setPpm2(Mat ppm2) {
+        this.ppm2 = ppm2;
+    }
+
+    /**
+     * @return derived rectification or null if it was not computed yet
+     */
+    public RectifyModel getRectifyModel() {
+        return rectifyModel;
+    }
+
+    public void setRectifyModel(RectifyModel rectifyModel) {
+        this.rectifyModel = rectifyModel;
+    }
+
+    /**
+     * @return remap tables for the images of size 'imageSize1' and 'imageSize2' or null if they were not built yet
+     */
+    public RemapModel getRemapModel() {
+        return remapModel;
+    }
+
+    public void setRemapModel(RemapModel remapModel) {
+        this.remapModel = remapModel;
+    }
+
+    public Size getImageSize1() {
+        return imageSize1;
+    }
+
+    public void setImageSize1(Size imageSize1) {
+        this.imageSize1 = imageSize1;
+    }
+
+    public Size getImageSize2() {
+        return imageSize2;
+    }
+
+    public void setImageSize2(Size imageSize2) {
+        this.imageSize2 = imageSize2;
+    }
+
+    /**
+     * @return number of native bytes used by the matrices and remap tables of this calibration
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Mat mat : new Mat[]{intrinsic, distCoeffs, ppm1, ppm2}) {
+            bytes += bytes(mat);
+        }
+        if (rectifyModel != null) {
+            for (Mat mat : new Mat[]{rectifyModel.getT1(), rectifyModel.getT2(), rectifyModel.getPn1(), rectifyModel.getPn2()}) {
+                bytes += bytes(mat);
+            }
+        }
+        if (remapModel != null) {
+            bytes += remapModel.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    private static long bytes(Mat mat) {
+        return mat != null ? mat.total() * mat.elemSize() : 0;
+    }
+}
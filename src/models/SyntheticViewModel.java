@@ -0,0 +1,53 @@
+package models;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+
+/**
+ * Rendered chessboard view with its ground truth: board pose and exact (distorted) corner positions
+ */
+public class SyntheticViewModel {
+    private Mat image;
+    private Mat rVector;
+    private Mat tVector;
+    private MatOfPoint2f corners;
+
+    public SyntheticViewModel(Mat image, Mat rVector, Mat tVector, MatOfPoint2f corners) {
+        this.image = image;
+        this.rVector = rVector;
+        this.tVector = tVector;
+        this.corners = corners;
+    }
+
+    public Mat getImage() {
+        return image;
+    }
+
+    public void setImage(Mat image) {
+        this.image = image;
+    }
+
+    public Mat getRVector() {
+        return rVector;
+    }
+
+    public void setRVector(Mat rVector) {
+        this.rVector = rVector;
+    }
+
+    public Mat getTVector() {
+        return tVector;
+    }
+
+    public void setTVector(Mat tVector) {
+        this.tVector = tVector;
+    }
+
+    public MatOfPoint2f getCorners() {
+        return corners;
+    }
+
+    public void setCorners(MatOfPoint2f corners) {
+        this.corners = corners;
+    }
+}
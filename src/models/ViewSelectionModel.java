@@ -0,0 +1,59 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Views used for a calibration together with the reprojection error of the selected views
+ * and the error of all views with the camera parameters calibrated on the selection
+ */
+public class ViewSelectionModel {
+    private List<Integer> selectedViews;
+    private int totalViews;
+    private double subsetRmsError;
+    private double fullRmsError;
+
+    public ViewSelectionModel(List<Integer> selectedViews, int totalViews, double subsetRmsError, double fullRmsError) {
+        this.selectedViews = selectedViews;
+        this.totalViews = totalViews;
+        this.subsetRmsError = subsetRmsError;
+        this.fullRmsError = fullRmsError;
+    }
+
+    public List<Integer> getSelectedViews() {
+        return selectedViews;
+    }
+
+    public void setSelectedViews(List<Integer> selectedViews) {
+        this.selectedViews = selectedViews;
+    }
+
+    public int getTotalViews() {
+        return totalViews;
+    }
+
+    public void setTotalViews(int totalViews) {
+        this.totalViews = totalViews;
+    }
+
+    public double getSubsetRmsError() {
+        return subsetRmsError;
+    }
+
+    public void setSubsetRmsError(double subsetRmsError) {
+        this.subsetRmsError = subsetRmsError;
+    }
+
+    public double getFullRmsError() {
+        return fullRmsError;
+    }
+
+    public void setFullRmsError(double fullRmsError) {
+        this.fullRmsError = fullRmsError;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Selected %d of %d views %s, rms: %.4f (selected views), %.4f (all views)",
+                selectedViews.size(), totalViews, selectedViews, subsetRmsError, fullRmsError);
+    }
+}
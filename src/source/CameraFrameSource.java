@@ -0,0 +1,34 @@
+package source;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * Frames of a connected/embedded camera
+ */
+public class CameraFrameSource implements FrameSource {
+    private final int device;
+    private final VideoCapture capture = new VideoCapture();
+
+    /**
+     * @param device index of the camera (0 = default camera)
+     */
+    public CameraFrameSource(int device) {
+        this.device = device;
+    }
+
+    @Override
+    public boolean open() {
+        return capture.open(device);
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        return capture.read(frame);
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+    }
+}
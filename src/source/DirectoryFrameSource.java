@@ -0,0 +1,60 @@
+package source;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import utils.Utils;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Images of a directory in natural order (calib0, calib1, ..., calib10), optionally repeated
+ */
+public class DirectoryFrameSource implements FrameSource {
+    private final String directory;
+    private final int repetitions;
+    private File[] files;
+    private int index;
+
+    /**
+     * @param directory   directory with the images
+     * @param repetitions how often the images are played (1 = once)
+     */
+    public DirectoryFrameSource(String directory, int repetitions) {
+        this.directory = directory;
+        this.repetitions = Math.max(1, repetitions);
+    }
+
+    public DirectoryFrameSource(String directory) {
+        this(directory, 1);
+    }
+
+    @Override
+    public boolean open() {
+        files = new File(directory).listFiles((dir, name) -> name.matches("(?i).*\\.(jpe?g|png|bmp|tiff?)$"));
+        if (files == null || files.length == 0) {
+            System.out.println("Error: no images in " + directory);
+            return false;
+        }
+        Arrays.sort(files, (a, b) -> Utils.compareNatural(a.getName(), b.getName()));
+        index = 0;
+        return true;
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        while (files != null && index < files.length * repetitions) {
+            Mat image = Imgcodecs.imread(files[index++ % files.length].getPath());
+            if (!image.empty()) {
+                image.copyTo(frame);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        files = null;
+    }
+}
@@ -0,0 +1,28 @@
+package source;
+
+import org.opencv.core.Mat;
+
+/**
+ * Source of camera frames for the calibration (live camera, video file, image directory, synthetic frames)
+ */
+public interface FrameSource extends AutoCloseable {
+
+    /**
+     * @return whether the source could be opened
+     */
+    boolean open();
+
+    /**
+     * Reads the next frame
+     *
+     * @param frame output for the frame
+     * @return false if there are no more frames
+     */
+    boolean read(Mat frame);
+
+    /**
+     * Releases the source, frames can not be read afterwards
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,74 @@
+package source;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import utils.Utils;
+
+/**
+ * In-memory frames showing a chessboard that moves and tilts from frame to frame,
+ * needs neither a camera nor any files (load tests of the capture and detection pipeline)
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private static final int SQUARE_SIZE = 40; // pixels of a square in the rendered board
+
+    private final Size frameSize;
+    private final Size chessboardDimensions;
+    private final int frames;
+    private Mat board;
+    private MatOfPoint2f boardCorners;
+    private int index;
+
+    /**
+     * @param frameSize            size of the frames
+     * @param chessboardDimensions number of inner corners per row and column
+     * @param frames               number of frames
+     */
+    public SyntheticFrameSource(Size frameSize, Size chessboardDimensions, int frames) {
+        this.frameSize = frameSize;
+        this.chessboardDimensions = chessboardDimensions;
+        this.frames = frames;
+    }
+
+    @Override
+    public boolean open() {
+        board = Utils.renderChessboard(chessboardDimensions, SQUARE_SIZE);
+        boardCorners = new MatOfPoint2f(new Point(0, 0), new Point(board.cols(), 0),
+                new Point(board.cols(), board.rows()), new Point(0, board.rows()));
+        index = 0;
+        return true;
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        if (board == null || index >= frames) {
+            return false;
+        }
+        double t = index++ * 0.05;
+        double width = frameSize.width;
+        double height = frameSize.height;
+
+        // board center on a Lissajous path, the board is tilted by shrinking the left / right and top / bottom edges
+        double centerX = width * (0.5 + 0.15 * Math.sin(t));
+        double centerY = height * (0.5 + 0.12 * Math.sin(1.3 * t));
+        double halfWidth = width * 0.3;
+        double halfHeight = halfWidth * board.rows() / board.cols();
+        double tiltX = 0.15 * Math.sin(0.7 * t);
+        double tiltY = 0.15 * Math.cos(0.9 * t);
+        MatOfPoint2f quad = new MatOfPoint2f(
+                new Point(centerX - halfWidth * (1 - tiltY), centerY - halfHeight * (1 - tiltX)),
+                new Point(centerX + halfWidth * (1 + tiltY), centerY - halfHeight * (1 + tiltX)),
+                new Point(centerX + halfWidth * (1 + tiltY), centerY + halfHeight * (1 + tiltX)),
+                new Point(centerX - halfWidth * (1 - tiltY), centerY + halfHeight * (1 - tiltX)));
+
+        Mat homography = Imgproc.getPerspectiveTransform(boardCorners, quad);
+        Mat gray = new Mat();
+        Imgproc.warpPerspective(board, gray, homography, frameSize, Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(255));
+        Imgproc.cvtColor(gray, frame, Imgproc.COLOR_GRAY2BGR);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        board = null;
+    }
+}
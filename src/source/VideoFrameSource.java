@@ -0,0 +1,34 @@
+package source;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * Frames of a video file, read as fast as they can be decoded
+ */
+public class VideoFrameSource implements FrameSource {
+    private final String fileName;
+    private final VideoCapture capture = new VideoCapture();
+
+    /**
+     * @param fileName name of the video file
+     */
+    public VideoFrameSource(String fileName) {
+        this.fileName = fileName;
+    }
+
+    @Override
+    public boolean open() {
+        return capture.open(fileName);
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        return capture.read(frame) && !frame.empty();
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+    }
+}
@@ -0,0 +1,54 @@
+package utils;
+
+import models.CalibrationVersionModel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current calibration of a running stream, a re-calibration publishes a new version without pausing it
+ * readers take the current version with a single volatile read (no lock) and use it for the whole frame,
+ * frames in flight finish on the version they started with, the next frame picks up the new one
+ * replaced versions are not released, frames may still use them (they are freed by the garbage collector)
+ */
+public class CalibrationHolder {
+    private final AtomicReference<CalibrationVersionModel> current = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * @return current calibration or null if none was published yet
+     */
+    public CalibrationVersionModel get() {
+        return current.get();
+    }
+
+    /**
+     * Reserves the version number of a calibration, called when a re-calibration starts
+     * so versions are ordered by start time even if the computations finish in a different order
+     *
+     * @return new version number
+     */
+    public long nextVersion() {
+        return versions.incrementAndGet();
+    }
+
+    /**
+     * Makes the given calibration the current one unless a newer version was published in the meantime
+     *
+     * @param calibration fully built calibration, must not be changed after publication
+     * @return true if it is the current calibration now, false if it was outdated
+     */
+    public boolean publish(CalibrationVersionModel calibration) {
+        CalibrationVersionModel previous = current.getAndAccumulate(calibration,
+                (old, candidate) -> old == null || candidate.getVersion() > old.getVersion() ? candidate : old);
+        return previous == null || calibration.getVersion() > previous.getVersion();
+    }
+
+    /**
+     * @return version of the current calibration, 0 if none was published yet
+     */
+    public long getVersion() {
+        CalibrationVersionModel calibration = current.get();
+        return calibration != null ? calibration.getVersion() : 0;
+    }
+}
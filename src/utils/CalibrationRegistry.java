@@ -0,0 +1,232 @@
+package utils;
+
+import models.CanvasModel;
+import models.RectifyModel;
+import models.RemapModel;
+import models.RigCalibrationModel;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Calibrations of many stereo rigs, stored in one directory per rig id:
+ * '<root>/<rig id>/projectionMatrices' (required) and '<root>/<rig id>/cameraParams' (optional), text or binary format
+ * a rig is loaded on first use, its rectification and remap tables are derived on first request,
+ * loaded rigs are kept in a LRU cache bounded by the native bytes of their matrices and remap tables
+ * evicted matrices are not released, callers may still use them (they are freed by the garbage collector)
+ */
+public class CalibrationRegistry {
+    public static final String PROJECTION_MATRICES_FILENAME = "projectionMatrices";
+    public static final String CAMERA_PARAMS_FILENAME = "cameraParams";
+
+    private final File root;
+    private final long maxBytes;
+    private final boolean fixedPointMaps;
+    private final LinkedHashMap<String, RigCalibrationModel> rigs = new LinkedHashMap<>(16, 0.75f, true);
+    private final RectificationKernel kernel = new RectificationKernel();
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param root     directory with one sub directory per rig
+     * @param maxBytes maximum number of native bytes of all cached rigs
+     */
+    public CalibrationRegistry(String root, long maxBytes) {
+        this(root, maxBytes, false);
+    }
+
+    /**
+     * @param root           directory with one sub directory per rig
+     * @param maxBytes       maximum number of native bytes of all cached rigs
+     * @param fixedPointMaps whether the remap tables are stored in the fixed point format (CV_16SC2 + CV_16UC1)
+     */
+    public CalibrationRegistry(String root, long maxBytes, boolean fixedPointMaps) {
+        this.root = new File(root);
+        this.maxBytes = maxBytes;
+        this.fixedPointMaps = fixedPointMaps;
+    }
+
+    /**
+     * Returns the calibration of a rig, loads it if it is not cached
+     * the rig is loaded without holding the lock, if two threads load the same rig the first result is kept
+     *
+     * @param rigId id of the rig (name of its directory)
+     * @return calibration of the rig or null if it can not be loaded
+     */
+    public RigCalibrationModel get(String rigId) {
+        synchronized (this) {
+            RigCalibrationModel rig = rigs.get(rigId);
+            if (rig != null) {
+                hits++;
+                return rig;
+            }
+            misses++;
+        }
+
+        RigCalibrationModel loaded = load(rigId);
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (this) {
+            RigCalibrationModel rig = rigs.get(rigId);
+            if (rig != null) {
+                return rig;
+            }
+            rigs.put(rigId, loaded);
+            bytes += loaded.getMemoryBytes();
+            evict(rigId);
+            return loaded;
+        }
+    }
+
+    /**
+     * Returns the rectification of a rig, derives it from the projection matrices on first request
+     *
+     * @param rigId id of the rig
+     * @return transformation matrices and rectified projection matrices or null if the rig can not be loaded
+     */
+    public RectifyModel getRectifyModel(String rigId) {
+        RigCalibrationModel rig = get(rigId);
+        if (rig == null) {
+            return null;
+        }
+        synchronized (this) {
+            return rectifyModel(rigId, rig);
+        }
+    }
+
+    /**
+     * Returns the remap tables of a rig for the given image sizes, builds them on first request
+     * the tables are built without holding the lock and replace the tables of other image sizes,
+     * the canvas function must give the same canvas for the same rectification (e.g. fixed crop settings)
+     *
+     * @param rigId      id of the rig
+     * @param imageSize1 size of image 1
+     * @param imageSize2 size of image 2
+     * @param canvas     computes the output canvas from the rectification of the rig
+     * @return remap tables for both cameras or null if the rig can not be loaded
+     */
+    public RemapModel getRemapModel(String rigId, Size imageSize1, Size imageSize2, Function<RectifyModel, CanvasModel> canvas) {
+        RigCalibrationModel rig = get(rigId);
+        if (rig == null) {
+            return null;
+        }
+        RectifyModel rectifyModel;
+        synchronized (this) {
+            if (rig.getRemapModel() != null && imageSize1.equals(rig.getImageSize1()) && imageSize2.equals(rig.getImageSize2())) {
+                return rig.getRemapModel();
+            }
+            rectifyModel = rectifyModel(rigId, rig);
+        }
+
+        RemapModel remapModel = RectificationMapCache.createMaps(canvas.apply(rectifyModel), fixedPointMaps);
+        synchronized (this) {
+            long before = rig.getMemoryBytes();
+            rig.setRemapModel(remapModel);
+            rig.setImageSize1(imageSize1.clone());
+            rig.setImageSize2(imageSize2.clone());
+            resize(rigId, rig, before);
+            return remapModel;
+        }
+    }
+
+    /**
+     * Removes a rig from the cache, e.g. after it was re-calibrated, the next request loads it again
+     *
+     * @param rigId id of the rig
+     */
+    public synchronized void invalidate(String rigId) {
+        RigCalibrationModel rig = rigs.remove(rigId);
+        if (rig != null) {
+            bytes -= rig.getMemoryBytes();
+        }
+    }
+
+    public synchronized int size() {
+        return rigs.size();
+    }
+
+    /**
+     * @return number of native bytes of all cached rigs
+     */
+    public synchronized long getMemoryBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d rigs, %d bytes, %d hits, %d misses, %d evictions", rigs.size(), bytes, hits, misses, evictions);
+    }
+
+    /**
+     * Derives the rectification of the rig with the shared kernel if it was not computed yet, called with the lock held
+     */
+    private RectifyModel rectifyModel(String rigId, RigCalibrationModel rig) {
+        if (rig.getRectifyModel() == null) {
+            long before = rig.getMemoryBytes();
+            rig.setRectifyModel(kernel.rectify(rig.getPpm1(), rig.getPpm2()));
+            resize(rigId, rig, before);
+        }
+        return rig.getRectifyModel();
+    }
+
+    /**
+     * Accounts for the changed size of a rig if it is still cached, called with the lock held
+     */
+    private void resize(String rigId, RigCalibrationModel rig, long before) {
+        if (rigs.get(rigId) == rig) {
+            bytes += rig.getMemoryBytes() - before;
+            evict(rigId);
+        }
+    }
+
+    /**
+     * Removes least recently used rigs until the cache fits into 'maxBytes', the given rig is never removed
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, RigCalibrationModel>> iterator = rigs.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, RigCalibrationModel> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            bytes -= entry.getValue().getMemoryBytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private RigCalibrationModel load(String rigId) {
+        File directory = new File(root, rigId);
+        File ppmFile = new File(directory, PROJECTION_MATRICES_FILENAME);
+        if (!ppmFile.isFile()) {
+            System.out.println("Error: no projection matrices for rig " + rigId);
+            return null;
+        }
+        List<Mat> ppms = CalibrationUtils.loadPPM(ppmFile.getPath(), new Mat(), new Mat());
+        if (ppms.get(0).empty() || ppms.get(1).empty()) {
+            return null;
+        }
+
+        Mat intrinsic = null;
+        Mat distCoeffs = null;
+        File cameraFile = new File(directory, CAMERA_PARAMS_FILENAME);
+        if (cameraFile.isFile()) {
+            List<Mat> camera = CalibrationUtils.loadCameraCalibration(cameraFile.getPath(), new Mat(), new Mat());
+            if (!camera.get(0).empty()) {
+                intrinsic = camera.get(0);
+                distCoeffs = camera.get(1);
+            }
+        }
+        return new RigCalibrationModel(rigId, intrinsic, distCoeffs, ppms.get(0), ppms.get(1));
+    }
+}
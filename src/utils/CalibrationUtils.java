@@ -1,15 +1,35 @@
 package utils;
 
+import models.RectifyModel;
+import models.RemapModel;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 import static org.opencv.core.CvType.CV_64F;
 
 public class CalibrationUtils {
+    private static final int REMAP_MAGIC = 0x50414d52; // "RMAP"
+    private static final int REMAP_VERSION = 2;
+    private static final int CALIBRATION_MAGIC = 0x424c4143; // "CALB"
+    private static final int CALIBRATION_VERSION = 1;
+    private static final int CALIBRATION_HEADER_BYTES = 6 * 4;
+    private static final int KIND_PROJECTION_MATRICES = 1;
+    private static final int KIND_CAMERA_CALIBRATION = 2;
 
     /**
      * Util function to save Camera Projection Matrices
@@ -63,6 +83,7 @@ public class CalibrationUtils {
 
     /**
      * Util function to load Camera Projection Matrices
+     * reads the binary format of 'savePPMBinary' or the text format of 'savePPM'
      *
      * @param fileName name of the file with the saved values
      * @param PPM1     projection matrix 1 to be loaded
@@ -70,6 +91,10 @@ public class CalibrationUtils {
      * @return List of the loaded projection matrices
      */
     public static List<Mat> loadPPM(String fileName, Mat PPM1, Mat PPM2) {
+        if (isBinaryCalibration(fileName)) {
+            List<Mat> matrices = loadMatricesBinary(fileName, KIND_PROJECTION_MATRICES);
+            return matrices != null ? matrices : Arrays.asList(PPM1, PPM2);
+        }
         FileReader reader;
         try {
             reader = new FileReader(fileName);
@@ -161,6 +186,7 @@ public class CalibrationUtils {
 
     /**
      * Util function to load camera calibration parameters
+     * reads the binary format of 'saveCameraCalibrationBinary' or the text format of 'saveCameraCalibration'
      *
      * @param fileName     name of the file with the saved values
      * @param cameraMatrix camera matrix to be loaded
@@ -168,6 +194,10 @@ public class CalibrationUtils {
      * @return List of the loaded camera calibration parameters
      */
     public static List<Mat> loadCameraCalibration(String fileName, Mat cameraMatrix, Mat distCoeffs) {
+        if (isBinaryCalibration(fileName)) {
+            List<Mat> matrices = loadMatricesBinary(fileName, KIND_CAMERA_CALIBRATION);
+            return matrices != null ? matrices : Arrays.asList(cameraMatrix, distCoeffs);
+        }
         FileReader reader;
         try {
             reader = new FileReader(fileName);
@@ -208,4 +238,302 @@ public class CalibrationUtils {
 
         return Arrays.asList(cameraMatrix, distCoeffs);
     }
+
+    /**
+     * Util function to save Camera Projection Matrices in the binary format
+     *
+     * @param fileName name of the file with the saved values
+     * @param PPM1     input projection matrix 1
+     * @param PPM2     input projection matrix 2
+     * @return result whether saving was successful
+     * @see #saveMatricesBinary(String, int, Mat...)
+     */
+    public static boolean savePPMBinary(String fileName, Mat PPM1, Mat PPM2) {
+        return saveMatricesBinary(fileName, KIND_PROJECTION_MATRICES, PPM1, PPM2);
+    }
+
+    /**
+     * Util function to save camera calibration parameters in the binary format
+     *
+     * @param fileName     name of the file with the saved values
+     * @param cameraMatrix input camera matrix
+     * @param distCoeffs   input distortion coefficients
+     * @return result whether saving was successful
+     * @see #saveMatricesBinary(String, int, Mat...)
+     */
+    public static boolean saveCameraCalibrationBinary(String fileName, Mat cameraMatrix, Mat distCoeffs) {
+        return saveMatricesBinary(fileName, KIND_CAMERA_CALIBRATION, cameraMatrix, distCoeffs);
+    }
+
+    /**
+     * @param fileName name of a calibration file
+     * @return whether the file is in the binary format (otherwise the text format is assumed)
+     */
+    public static boolean isBinaryCalibration(String fileName) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return Integer.reverseBytes(in.readInt()) == CALIBRATION_MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Saves double matrices in the binary calibration format (little endian):
+     * header (magic, version, kind, number of matrices, CRC32 of the payload, reserved),
+     * then rows, cols and the values (row major doubles) of every matrix
+     */
+    private static boolean saveMatricesBinary(String fileName, int kind, Mat... matrices) {
+        int payloadBytes = 0;
+        for (Mat mat : matrices) {
+            payloadBytes += 2 * 4 + (int) mat.total() * 8;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (Mat mat : matrices) {
+            Mat values = mat;
+            if (mat.type() != CV_64F || !mat.isContinuous()) {
+                values = new Mat();
+                mat.convertTo(values, CV_64F);
+            }
+            double[] data = new double[(int) values.total()];
+            values.get(0, 0, data);
+            payload.putInt(values.rows()).putInt(values.cols());
+            payload.asDoubleBuffer().put(data);
+            payload.position(payload.position() + data.length * 8);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        ByteBuffer header = ByteBuffer.allocate(CALIBRATION_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CALIBRATION_MAGIC).putInt(CALIBRATION_VERSION).putInt(kind).putInt(matrices.length)
+                .putInt((int) crc.getValue()).putInt(0);
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            out.write(header.array());
+            out.write(payload.array());
+            return true;
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Loads matrices saved by 'saveMatricesBinary', the whole file is read into a heap buffer
+     * (no mapping, which would keep the file locked on Windows until the buffer is garbage collected)
+     * and every matrix is copied with one bulk read and one 'put'
+     *
+     * @return loaded matrices or null if the file can not be read, is of another kind or is corrupted
+     */
+    private static List<Mat> loadMatricesBinary(String fileName, int kind) {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // the channel may return fewer bytes than requested
+            }
+            buffer.flip();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < CALIBRATION_HEADER_BYTES || buffer.getInt() != CALIBRATION_MAGIC
+                    || buffer.getInt() != CALIBRATION_VERSION || buffer.getInt() != kind) {
+                System.out.println("Exception: " + fileName + " is no calibration file of version " + CALIBRATION_VERSION);
+                return null;
+            }
+            int count = buffer.getInt();
+            int checksum = buffer.getInt();
+            buffer.getInt(); // reserved
+
+            ByteBuffer payload = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                System.out.println("Exception: checksum mismatch in " + fileName);
+                return null;
+            }
+
+            List<Mat> matrices = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int rows = payload.getInt();
+                int cols = payload.getInt();
+                double[] data = new double[rows * cols];
+                payload.asDoubleBuffer().get(data);
+                payload.position(payload.position() + data.length * 8);
+                Mat mat = new Mat(rows, cols, CV_64F);
+                mat.put(0, 0, data);
+                matrices.add(mat);
+            }
+            return matrices;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Util function to save remap tables together with the transformation matrices they were built from
+     * binary format (little endian): magic, version, output size, valid roi, T1, T2, Pn1, Pn2, the 4 maps
+     * and the CRC32 of all bytes before it
+     *
+     * @param fileName   name of the file with the saved values
+     * @param remapModel remap tables (float or fixed point)
+     * @return result whether saving was successful
+     */
+    public static boolean saveRemapModel(String fileName, RemapModel remapModel) {
+        try (CheckedOutputStream out = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)), new CRC32())) {
+            Rect roi = remapModel.getValidRoi() != null ? remapModel.getValidRoi() : new Rect();
+            ByteBuffer header = ByteBuffer.allocate(8 * 4).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(REMAP_MAGIC).putInt(REMAP_VERSION)
+                    .putInt((int) remapModel.getSize().width).putInt((int) remapModel.getSize().height)
+                    .putInt(roi.x).putInt(roi.y).putInt(roi.width).putInt(roi.height);
+            out.write(header.array());
+
+            RectifyModel rectifyModel = remapModel.getRectifyModel();
+            for (Mat mat : List.of(rectifyModel.getT1(), rectifyModel.getT2(), rectifyModel.getPn1(), rectifyModel.getPn2(),
+                    remapModel.getMap1X(), remapModel.getMap1Y(), remapModel.getMap2X(), remapModel.getMap2Y())) {
+                writeMat(out, mat);
+            }
+            int checksum = (int) out.getChecksum().getValue();
+            out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(checksum).array());
+            return true;
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Util function to load remap tables saved by 'saveRemapModel'
+     *
+     * @param fileName name of the file with the saved values
+     * @return loaded remap tables or null if the file can not be read or is corrupted
+     */
+    public static RemapModel loadRemapModel(String fileName) {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(fileName)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            ByteBuffer header = readBuffer(in, 8 * 4);
+            if (header.getInt() != REMAP_MAGIC || header.getInt() != REMAP_VERSION) {
+                System.out.println("Exception: " + fileName + " is no remap file of version " + REMAP_VERSION);
+                return null;
+            }
+            Size size = new Size(header.getInt(), header.getInt());
+            Rect roi = new Rect(header.getInt(), header.getInt(), header.getInt(), header.getInt());
+
+            RectifyModel rectifyModel = new RectifyModel(readMat(in), readMat(in), readMat(in), readMat(in));
+            RemapModel remapModel = new RemapModel(rectifyModel, size, readMat(in), readMat(in), readMat(in), readMat(in));
+            remapModel.setValidRoi(roi);
+
+            int checksum = (int) checked.getChecksum().getValue();
+            if (readBuffer(in, 4).getInt() != checksum) {
+                System.out.println("Exception: checksum mismatch in " + fileName);
+                return null;
+            }
+            return remapModel;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Writes rows, cols, type and the raw (little endian) data of a matrix
+     */
+    static void writeMat(OutputStream out, Mat mat) throws IOException {
+        Mat continuous = mat.isContinuous() ? mat : mat.clone();
+        int depth = CvType.depth(continuous.type());
+        int values = (int) (continuous.total() * continuous.channels());
+
+        ByteBuffer buffer = ByteBuffer.allocate(3 * 4 + values * (int) continuous.elemSize1()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(continuous.rows()).putInt(continuous.cols()).putInt(continuous.type());
+        switch (depth) {
+            case CvType.CV_8U:
+            case CvType.CV_8S: {
+                byte[] data = new byte[values];
+                continuous.get(0, 0, data);
+                buffer.put(data);
+                break;
+            }
+            case CvType.CV_16U:
+            case CvType.CV_16S: {
+                short[] data = new short[values];
+                continuous.get(0, 0, data);
+                buffer.asShortBuffer().put(data);
+                break;
+            }
+            case CvType.CV_32S: {
+                int[] data = new int[values];
+                continuous.get(0, 0, data);
+                buffer.asIntBuffer().put(data);
+                break;
+            }
+            case CvType.CV_32F: {
+                float[] data = new float[values];
+                continuous.get(0, 0, data);
+                buffer.asFloatBuffer().put(data);
+                break;
+            }
+            case CvType.CV_64F: {
+                double[] data = new double[values];
+                continuous.get(0, 0, data);
+                buffer.asDoubleBuffer().put(data);
+                break;
+            }
+            default:
+                throw new IOException("Unsupported matrix type " + CvType.typeToString(continuous.type()));
+        }
+        out.write(buffer.array());
+    }
+
+    /**
+     * Reads a matrix written by 'writeMat'
+     */
+    static Mat readMat(DataInputStream in) throws IOException {
+        ByteBuffer header = readBuffer(in, 3 * 4);
+        int rows = header.getInt();
+        int cols = header.getInt();
+        int type = header.getInt();
+        if (rows < 0 || cols < 0) {
+            throw new IOException("Invalid matrix size " + rows + "x" + cols);
+        }
+        Mat mat = new Mat(rows, cols, type);
+        int values = (int) (mat.total() * mat.channels());
+        ByteBuffer buffer = readBuffer(in, values * (int) mat.elemSize1());
+        switch (CvType.depth(type)) {
+            case CvType.CV_8U:
+            case CvType.CV_8S: {
+                mat.put(0, 0, buffer.array());
+                break;
+            }
+            case CvType.CV_16U:
+            case CvType.CV_16S: {
+                short[] data = new short[values];
+                buffer.asShortBuffer().get(data);
+                mat.put(0, 0, data);
+                break;
+            }
+            case CvType.CV_32S: {
+                int[] data = new int[values];
+                buffer.asIntBuffer().get(data);
+                mat.put(0, 0, data);
+                break;
+            }
+            case CvType.CV_32F: {
+                float[] data = new float[values];
+                buffer.asFloatBuffer().get(data);
+                mat.put(0, 0, data);
+                break;
+            }
+            case CvType.CV_64F: {
+                double[] data = new double[values];
+                buffer.asDoubleBuffer().get(data);
+                mat.put(0, 0, data);
+                break;
+            }
+            default:
+                throw new IOException("Unsupported matrix type " + CvType.typeToString(type));
+        }
+        return mat;
+    }
+
+    private static ByteBuffer readBuffer(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
 }
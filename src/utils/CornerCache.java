@@ -0,0 +1,141 @@
+package utils;
+
+import org.opencv.core.Mat;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk cache for the chessboard corners of calibration images
+ * entries are named after a SHA-256 hash of the image file content and the board settings,
+ * a changed image or board gets a new entry, images without a chessboard are cached as well
+ * binary format (little endian): magic, version, found flag, image points, object points
+ * and the CRC32 of all bytes before it
+ * an entry which can not be decoded (corrupted, other format version) is deleted and treated as missing
+ */
+public class CornerCache {
+    private static final String EXTENSION = ".corners";
+    private static final int CORNER_MAGIC = 0x4e524f43; // "CORN"
+    private static final int CORNER_VERSION = 2;
+
+    private final File directory;
+
+    /**
+     * @param directory directory of the cache, created if missing
+     */
+    public CornerCache(String directory) {
+        this.directory = new File(directory);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            System.out.println("Can not create corner cache " + directory);
+        }
+    }
+
+    /**
+     * Hashes the content of an image file together with the board settings
+     *
+     * @param content  raw bytes of the image file
+     * @param settings description of the board and detection settings
+     * @return hex encoded SHA-256 hash
+     */
+    public static String key(byte[] content, String settings) {
+        return Utils.sha256(settings.getBytes(StandardCharsets.UTF_8), content);
+    }
+
+    /**
+     * @param key key created by 'key'
+     * @return image points and object points, an empty list if the image has no chessboard
+     * or null if there is no (readable) entry
+     */
+    public List<Mat> load(String key) {
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<Mat> corners = read(file);
+        if (corners == null && !file.delete()) {
+            System.out.println("Can not delete corner cache entry " + file);
+        }
+        return corners;
+    }
+
+    /**
+     * @return image points and object points, an empty list if the image has no chessboard
+     * or null if the entry can not be decoded
+     */
+    private static List<Mat> read(File file) {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            byte[] bytes = new byte[3 * 4];
+            in.readFully(bytes);
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != CORNER_MAGIC || header.getInt() != CORNER_VERSION) {
+                System.out.println("Exception: " + file + " is no corner file of version " + CORNER_VERSION);
+                return null;
+            }
+            List<Mat> corners = header.getInt() == 0
+                    ? Collections.emptyList()
+                    : Arrays.asList(CalibrationUtils.readMat(in), CalibrationUtils.readMat(in));
+
+            int checksum = (int) checked.getChecksum().getValue();
+            byte[] trailer = new byte[4];
+            in.readFully(trailer);
+            if (ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN).getInt() != checksum) {
+                System.out.println("Exception: checksum mismatch in " + file);
+                return null;
+            }
+            return corners;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Stores the corners of an image, an existing entry with the same key is replaced
+     *
+     * @param key          key created by 'key'
+     * @param imagePoints  detected corners or null if the chessboard was not found
+     * @param objectPoints board positions of the corners or null if the chessboard was not found
+     * @return result whether saving was successful
+     */
+    public boolean save(String key, Mat imagePoints, Mat objectPoints) {
+        try {
+            Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+            try (CheckedOutputStream out = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())), new CRC32())) {
+                boolean found = imagePoints != null && objectPoints != null;
+                ByteBuffer header = ByteBuffer.allocate(3 * 4).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(CORNER_MAGIC).putInt(CORNER_VERSION).putInt(found ? 1 : 0);
+                out.write(header.array());
+                if (found) {
+                    CalibrationUtils.writeMat(out, imagePoints);
+                    CalibrationUtils.writeMat(out, objectPoints);
+                }
+                int checksum = (int) out.getChecksum().getValue();
+                out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(checksum).array());
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, file(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private File file(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+}
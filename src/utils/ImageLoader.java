@@ -0,0 +1,166 @@
+package utils;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams image files in the given order, the following images are decoded ahead on a worker pool
+ * the decoded images not yet taken by 'next' are bounded by 'maxInFlightBytes'
+ * (estimated from the largest image decoded so far, until the first image is decoded one image per thread is started)
+ * with the IMREAD_REDUCED_* flags the images are decoded at 1/2, 1/4 or 1/8 of their size (see 'getScale')
+ */
+public class ImageLoader implements AutoCloseable {
+    private static final int REDUCED_MASK = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2 | Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4
+            | Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+
+    private final List<String> fileNames;
+    private final int readFlags;
+    private final int threads;
+    private final long maxInFlightBytes;
+    private final ExecutorService decoders;
+    private final Queue<Future<Mat>> pending = new ArrayDeque<>();
+    private final AtomicLong largestImageBytes = new AtomicLong();
+
+    private int submitted;
+    private int consumed;
+    private boolean closed;
+
+    /**
+     * @param fileNames        file names of the images
+     * @param readFlags        flags passed to 'imread' (e.g. IMREAD_COLOR, IMREAD_GRAYSCALE, IMREAD_REDUCED_GRAYSCALE_4)
+     * @param threads          number of decoder threads
+     * @param maxInFlightBytes maximum number of bytes of decoded images waiting for the consumer
+     */
+    public ImageLoader(List<String> fileNames, int readFlags, int threads, long maxInFlightBytes) {
+        this.fileNames = fileNames;
+        this.readFlags = readFlags;
+        this.threads = Math.max(1, threads);
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.decoders = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "image-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prefetch();
+    }
+
+    public boolean hasNext() {
+        return !closed && consumed < fileNames.size();
+    }
+
+    /**
+     * Returns the next image, waits until it is decoded
+     *
+     * @return decoded image, empty if the file can not be read
+     */
+    public Mat next() {
+        prefetch();
+        Future<Mat> decoded = pending.poll();
+        if (decoded == null) {
+            throw new IllegalStateException("No more images");
+        }
+        Mat image;
+        try {
+            image = decoded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Exception: " + e.getMessage());
+            image = new Mat();
+        } catch (ExecutionException e) {
+            System.out.println("Exception: " + e.getCause().getMessage());
+            image = new Mat();
+        }
+        consumed++;
+        prefetch();
+        return image;
+    }
+
+    /**
+     * @return index of the image returned by the last call of 'next'
+     */
+    public int getIndex() {
+        return consumed - 1;
+    }
+
+    /**
+     * @return file name of the image returned by the last call of 'next'
+     */
+    public String getFileName() {
+        return fileNames.get(consumed - 1);
+    }
+
+    /**
+     * @return size of the decoded images relative to the files (1, 1/2, 1/4 or 1/8)
+     */
+    public double getScale() {
+        return scale(readFlags);
+    }
+
+    /**
+     * Stops decoding, images which were not taken are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        decoders.shutdownNow();
+        pending.clear();
+    }
+
+    /**
+     * @param readFlags flags passed to 'imread', may combine a reduced mode with other flags
+     *                  (e.g. IMREAD_REDUCED_GRAYSCALE_2 | IMREAD_IGNORE_ORIENTATION)
+     * @return size of the decoded images relative to the files
+     */
+    public static double scale(int readFlags) {
+        if (readFlags < 0) {
+            // IMREAD_UNCHANGED, imread ignores the reduced modes
+            return 1;
+        }
+        // the reduced modes are the bits 16, 32 and 64 (the color / grayscale bit is not part of the scale)
+        switch (readFlags & REDUCED_MASK) {
+            case Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2:
+                return 0.5;
+            case Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4:
+                return 0.25;
+            case Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8:
+                return 0.125;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Starts decoding the following images while they fit into the byte budget, the next image is always started
+     */
+    private void prefetch() {
+        while (submitted < fileNames.size()) {
+            int inFlight = submitted - consumed;
+            long imageBytes = largestImageBytes.get();
+            boolean fits = imageBytes == 0 ? inFlight < threads : (inFlight + 1) * imageBytes <= maxInFlightBytes;
+            if (inFlight > 0 && !fits) {
+                return;
+            }
+            String fileName = fileNames.get(submitted++);
+            pending.add(decoders.submit(() -> decode(fileName)));
+        }
+    }
+
+    private Mat decode(String fileName) {
+        Mat image = Imgcodecs.imread(fileName, readFlags);
+        if (image.empty()) {
+            System.out.println(fileName + " Error: can not read image.");
+            return image;
+        }
+        largestImageBytes.accumulateAndGet(image.total() * image.elemSize(), Math::max);
+        return image;
+    }
+}
@@ -0,0 +1,207 @@
+package utils;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes output images on a pool of encoder threads, so encoding does not block the calling stage
+ * the images are copied when queued, the bytes of all queued copies are bounded by 'maxQueuedBytes'
+ * ('write' waits until enough images are encoded), an image larger than the bound is queued alone
+ * without encoder threads (or after 'close') the images are encoded on the calling thread (same as calling 'imwrite')
+ */
+public class ImageWriter implements AutoCloseable {
+
+    /**
+     * Codec of the written images, BMP writes uncompressed bitmaps
+     */
+    public enum Format {
+        JPEG(".jpg", Imgcodecs.IMWRITE_JPEG_QUALITY),
+        PNG(".png", Imgcodecs.IMWRITE_PNG_COMPRESSION),
+        BMP(".bmp", -1);
+
+        private final String extension;
+        private final int qualityParameter;
+
+        Format(String extension, int qualityParameter) {
+            this.extension = extension;
+            this.qualityParameter = qualityParameter;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final Format format;
+    private final MatOfInt parameters;
+    private final long maxQueuedBytes;
+    private final ExecutorService encoders;
+    private final LatencyRecorder encodeLatency = new LatencyRecorder("encode");
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private long queuedBytes;
+    private int queuedImages;
+    private boolean closed;
+
+    /**
+     * @param format         codec of the written images
+     * @param quality        JPEG quality (0 - 100) or PNG compression level (0 - 9), -1 for the codec default
+     * @param threads        number of encoder threads, 0 to encode on the calling thread
+     * @param maxQueuedBytes maximum number of bytes of queued images
+     */
+    public ImageWriter(Format format, int quality, int threads, long maxQueuedBytes) {
+        this.format = format;
+        this.parameters = quality >= 0 && format.qualityParameter >= 0
+                ? new MatOfInt(format.qualityParameter, quality) : new MatOfInt();
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.encoders = threads > 0 ? Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "image-writer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * @return writer encoding JPEG images with the default quality on the calling thread
+     */
+    public static ImageWriter synchronous() {
+        return new ImageWriter(Format.JPEG, -1, 0, 0);
+    }
+
+    /**
+     * Queues an image, the file name extension of the format is appended to the given name
+     * the image can be changed or reused as soon as the call returns
+     *
+     * @param name  path of the image without extension
+     * @param image image to be written
+     */
+    public void write(String name, Mat image) {
+        String fileName = name + format.getExtension();
+        if (encoders == null) {
+            encode(fileName, image);
+            return;
+        }
+        Mat copy = image.clone();
+        long bytes = copy.total() * copy.elemSize();
+        synchronized (this) {
+            try {
+                while (!closed && queuedImages > 0 && queuedBytes + bytes > maxQueuedBytes) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                encode(fileName, copy);
+                return;
+            }
+            if (closed) {
+                encode(fileName, copy);
+                return;
+            }
+            queuedBytes += bytes;
+            queuedImages++;
+        }
+        try {
+            encoders.execute(() -> {
+                try {
+                    encode(fileName, copy);
+                } finally {
+                    dequeued(bytes);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed by another thread in the meantime
+            dequeued(bytes);
+            encode(fileName, copy);
+        }
+    }
+
+    /**
+     * Waits until all queued images are written
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (queuedImages > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Writes all queued images and stops the encoder threads, images written afterwards are encoded on the calling thread
+     */
+    @Override
+    public void close() {
+        if (encoders == null) {
+            return;
+        }
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Closes the writer when the JVM exits, so images queued before e.g. 'System.exit' are not lost
+     *
+     * @return this writer
+     */
+    public ImageWriter closeOnShutdown() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "image-writer-shutdown"));
+        return this;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public LatencyRecorder getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d images written (%d failed), %s", written.get(), failed.get(), encodeLatency);
+    }
+
+    private synchronized void dequeued(long bytes) {
+        queuedBytes -= bytes;
+        queuedImages--;
+        notifyAll();
+    }
+
+    private void encode(String fileName, Mat image) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = Imgcodecs.imwrite(fileName, image, parameters);
+        } catch (RuntimeException e) {
+            System.out.println("Exception: " + e.getMessage());
+            result = false;
+        }
+        encodeLatency.add(System.nanoTime() - start);
+        if (result) {
+            written.incrementAndGet();
+        } else {
+            System.out.println("Error: can not write " + fileName);
+            failed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples (in nanoseconds) of one processing stage, can be shared between threads
+ */
+public class LatencyRecorder {
+    private final String name;
+    private long[] samples = new long[256];
+    private int count = 0;
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public synchronized void add(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return latency of the given percentile in milliseconds (nearest rank), 0 if nothing was recorded
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, Math.min(count - 1, rank - 1))] / 1e6;
+    }
+
+    public synchronized double meanMillis() {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+        return sum / count / 1e6;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                name, count(), meanMillis(), percentileMillis(50), percentileMillis(90),
+                percentileMillis(99), percentileMillis(100));
+    }
+}
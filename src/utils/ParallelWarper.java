@@ -0,0 +1,117 @@
+package utils;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.opencv.core.CvType.CV_64F;
+
+/**
+ * Applies perspective transformations in parallel by splitting the output image into row bands
+ * every band is warped on its own with the homography shifted to the first row of the band
+ */
+public class ParallelWarper {
+    private static final int DEFAULT_BANDS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int bandsPerThread;
+
+    /**
+     * @param pool           pool the bands are warped on
+     * @param bandsPerThread number of bands per thread of the pool (more bands = better load balancing)
+     */
+    public ParallelWarper(ForkJoinPool pool, int bandsPerThread) {
+        this.pool = pool;
+        this.bandsPerThread = Math.max(1, bandsPerThread);
+    }
+
+    public ParallelWarper(ForkJoinPool pool) {
+        this(pool, DEFAULT_BANDS_PER_THREAD);
+    }
+
+    public ParallelWarper() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Warps both images of a stereo pair at the same time
+     *
+     * @param image1      image 1
+     * @param homography1 transformation matrix of image 1
+     * @param image2      image 2
+     * @param homography2 transformation matrix of image 2
+     * @param outputSize  size of the warped images
+     * @return list with the 2 warped images
+     */
+    public List<Mat> warpPair(Mat image1, Mat homography1, Mat image2, Mat homography2, Size outputSize) {
+        Mat warped1 = new Mat();
+        Mat warped2 = new Mat();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        submitBands(image1, warped1, homography1, outputSize, tasks);
+        submitBands(image2, warped2, homography2, outputSize, tasks);
+        joinAll(tasks);
+        return List.of(warped1, warped2);
+    }
+
+    /**
+     * Warps one image with the bands running in parallel
+     *
+     * @param src        input image
+     * @param dst        output image
+     * @param homography transformation matrix
+     * @param outputSize size of the output image
+     */
+    public void warp(Mat src, Mat dst, Mat homography, Size outputSize) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        submitBands(src, dst, homography, outputSize, tasks);
+        joinAll(tasks);
+    }
+
+    private void submitBands(Mat src, Mat dst, Mat homography, Size outputSize, List<ForkJoinTask<?>> tasks) {
+        int width = (int) outputSize.width;
+        int height = (int) outputSize.height;
+        dst.create(height, width, src.type());
+
+        double[] h = new double[9];
+        Mat homography64 = homography;
+        if (homography.type() != CV_64F) {
+            homography64 = new Mat();
+            homography.convertTo(homography64, CV_64F);
+        }
+        homography64.get(0, 0, h);
+
+        int bands = Math.min(height, pool.getParallelism() * bandsPerThread);
+        int bandHeight = (height + bands - 1) / bands;
+        for (int startRow = 0; startRow < height; startRow += bandHeight) {
+            int endRow = Math.min(height, startRow + bandHeight);
+            Mat band = dst.submat(startRow, endRow, 0, width);
+            Mat bandHomography = shiftedHomography(h, startRow);
+            tasks.add(pool.submit(() -> Imgproc.warpPerspective(src, band, bandHomography, band.size())));
+        }
+    }
+
+    /**
+     * Moves the origin of the output image to the given row,
+     * i.e. left multiplies the homography with a translation of -startRow in y
+     */
+    private static Mat shiftedHomography(double[] h, int startRow) {
+        double[] shifted = h.clone();
+        shifted[3] -= startRow * h[6];
+        shifted[4] -= startRow * h[7];
+        shifted[5] -= startRow * h[8];
+        Mat result = new Mat(3, 3, CV_64F);
+        result.put(0, 0, shifted);
+        return result;
+    }
+
+    private static void joinAll(List<ForkJoinTask<?>> tasks) {
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+}
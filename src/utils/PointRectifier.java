@@ -0,0 +1,114 @@
+package utils;
+
+import models.RectifyModel;
+import org.opencv.core.Mat;
+
+/**
+ * Applies the transformation matrices T1 and T2 to plain coordinate arrays without any image or Mat
+ * coordinates are stored interleaved (x0, y0, x1, y1, ...), the matrices are read once on construction
+ * instances are immutable and can be shared between threads
+ */
+public class PointRectifier {
+    private static final float EPSILON = 1.1920929e-7f; // FLT_EPSILON, same threshold as perspectiveTransform
+
+    private final double[] h1;
+    private final double[] h2;
+
+    /**
+     * @param rectifyModel transformation matrices of both cameras
+     */
+    public PointRectifier(RectifyModel rectifyModel) {
+        this(RectificationMapCache.toArray(rectifyModel.getT1()), RectificationMapCache.toArray(rectifyModel.getT2()));
+    }
+
+    /**
+     * @param t1 transformation matrix of camera 1 (row major 3x3)
+     * @param t2 transformation matrix of camera 2 (row major 3x3)
+     */
+    public PointRectifier(double[] t1, double[] t2) {
+        this.h1 = t1.clone();
+        this.h2 = t2.clone();
+    }
+
+    public PointRectifier(Mat t1, Mat t2) {
+        this(RectificationMapCache.toArray(t1), RectificationMapCache.toArray(t2));
+    }
+
+    /**
+     * Rectifies points of image 1, src and dst may be the same array
+     *
+     * @param src   interleaved input coordinates
+     * @param dst   interleaved output coordinates
+     * @param count number of points
+     */
+    public void rectifyPoints1(float[] src, float[] dst, int count) {
+        transform(h1, src, 0, dst, 0, count);
+    }
+
+    /**
+     * Rectifies points of image 2, src and dst may be the same array
+     *
+     * @param src   interleaved input coordinates
+     * @param dst   interleaved output coordinates
+     * @param count number of points
+     */
+    public void rectifyPoints2(float[] src, float[] dst, int count) {
+        transform(h2, src, 0, dst, 0, count);
+    }
+
+    public void rectifyPoints1(double[] src, double[] dst, int count) {
+        transform(h1, src, 0, dst, 0, count);
+    }
+
+    public void rectifyPoints2(double[] src, double[] dst, int count) {
+        transform(h2, src, 0, dst, 0, count);
+    }
+
+    /**
+     * Perspective transformation of interleaved float coordinates, same result as Core.perspectiveTransform
+     * up to float rounding (points mapped to infinity get the coordinates (0, 0))
+     * computed in float, a double division per point would be several times slower
+     * while the error stays far below 1/100 pixel
+     *
+     * @param h         row major 3x3 matrix
+     * @param src       input coordinates
+     * @param srcOffset index of the first x coordinate in src
+     * @param dst       output coordinates
+     * @param dstOffset index of the first x coordinate in dst
+     * @param count     number of points
+     */
+    public static void transform(double[] h, float[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        float h0 = (float) h[0], h1 = (float) h[1], h2 = (float) h[2];
+        float h3 = (float) h[3], h4 = (float) h[4], h5 = (float) h[5];
+        float h6 = (float) h[6], h7 = (float) h[7], h8 = (float) h[8];
+        int end = srcOffset + 2 * count;
+        for (int i = srcOffset, j = dstOffset; i < end; i += 2, j += 2) {
+            float x = src[i];
+            float y = src[i + 1];
+            float w = h6 * x + h7 * y + h8;
+            w = Math.abs(w) > EPSILON ? 1f / w : 0f;
+            dst[j] = (h0 * x + h1 * y + h2) * w;
+            dst[j + 1] = (h3 * x + h4 * y + h5) * w;
+        }
+    }
+
+    /**
+     * Perspective transformation of interleaved double coordinates
+     *
+     * @see #transform(double[], float[], int, float[], int, int)
+     */
+    public static void transform(double[] h, double[] src, int srcOffset, double[] dst, int dstOffset, int count) {
+        double h0 = h[0], h1 = h[1], h2 = h[2];
+        double h3 = h[3], h4 = h[4], h5 = h[5];
+        double h6 = h[6], h7 = h[7], h8 = h[8];
+        int end = srcOffset + 2 * count;
+        for (int i = srcOffset, j = dstOffset; i < end; i += 2, j += 2) {
+            double x = src[i];
+            double y = src[i + 1];
+            double w = h6 * x + h7 * y + h8;
+            w = Math.abs(w) > EPSILON ? 1 / w : 0;
+            dst[j] = (h0 * x + h1 * y + h2) * w;
+            dst[j + 1] = (h3 * x + h4 * y + h5) * w;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package utils;
+
+import models.RectifyModel;
+import org.opencv.core.Mat;
+
+import static org.opencv.core.CvType.CV_64F;
+
+/**
+ * Implementation of the rectification algorithm of
+ * A. Fusiello, E. Trucco, and A. Verri, "A Compact Algorithm for Rectification of Stereo Pairs"
+ * on primitive arrays
+ * All matrices are stored row major (3x3 = 9 values, 3x4 = 12 values),
+ * the scratch arrays are reused so one instance must not be shared between threads
+ */
+public class RectificationKernel {
+
+    // 3x3 scratch matrices
+    private final double[] q1 = new double[9];
+    private final double[] q2 = new double[9];
+    private final double[] qInv = new double[9];
+    private final double[] a1 = new double[9];
+    private final double[] a2 = new double[9];
+    private final double[] r1 = new double[9];
+    private final double[] r2 = new double[9];
+    private final double[] a = new double[9];
+    private final double[] r = new double[9];
+    private final double[] givens = new double[9];
+    private final double[] tmp = new double[9];
+
+    // 3 vectors
+    private final double[] c1 = new double[3];
+    private final double[] c2 = new double[3];
+    private final double[] v1 = new double[3];
+    private final double[] v2 = new double[3];
+    private final double[] v3 = new double[3];
+    private final double[] axis = new double[3];
+
+    /**
+     * Same as the array version for projection matrices stored in Mats (CV_64F)
+     *
+     * @param Po1 projection matrix of image/camera 1 (3x4)
+     * @param Po2 projection matrix of image/camera 2 (3x4)
+     * @return transformation matrices T1, T2 and rectified projection matrices Pn1, Pn2
+     */
+    public RectifyModel rectify(Mat Po1, Mat Po2) {
+        double[] po1 = new double[12];
+        double[] po2 = new double[12];
+        double[] t1 = new double[9];
+        double[] t2 = new double[9];
+        double[] pn1 = new double[12];
+        double[] pn2 = new double[12];
+        Po1.get(0, 0, po1);
+        Po2.get(0, 0, po2);
+
+        rectify(po1, po2, t1, t2, pn1, pn2);
+
+        Mat T1 = new Mat(3, 3, CV_64F);
+        Mat T2 = new Mat(3, 3, CV_64F);
+        Mat Pn1 = new Mat(3, 4, CV_64F);
+        Mat Pn2 = new Mat(3, 4, CV_64F);
+        T1.put(0, 0, t1);
+        T2.put(0, 0, t2);
+        Pn1.put(0, 0, pn1);
+        Pn2.put(0, 0, pn2);
+        return new RectifyModel(T1, T2, Pn1, Pn2);
+    }
+
+    /**
+     * Rectifies a stereo pair with known camera calibration, same results as Rectification.rectify
+     *
+     * @param po1 projection matrix of image/camera 1 (3x4)
+     * @param po2 projection matrix of image/camera 2 (3x4)
+     * @param t1  resulting transformation matrix of image 1 (3x3)
+     * @param t2  resulting transformation matrix of image 2 (3x3)
+     * @param pn1 resulting rectified projection matrix of camera 1 (3x4)
+     * @param pn2 resulting rectified projection matrix of camera 2 (3x4)
+     */
+    public void rectify(double[] po1, double[] po2, double[] t1, double[] t2, double[] pn1, double[] pn2) {
+        leftBlock(po1, q1);
+        leftBlock(po2, q2);
+
+        // intrinsic parameters and rotation of the old cameras
+        rqDecomposition(q1, a1, r1);
+        rqDecomposition(q2, a2, r2);
+
+        // optical centers c = -inv(Q) * q
+        cameraCenter(po1, q1, c1);
+        cameraCenter(po2, q2, c2);
+
+        // new x axis (= direction of the baseline)
+        for (int i = 0; i < 3; i++) {
+            v1[i] = c1[i] - c2[i];
+        }
+        // new y axes (orthogonal to new x and old z)
+        axis[0] = r1[6];
+        axis[1] = r1[7];
+        axis[2] = r1[8];
+        cross(axis, v1, v2);
+        // new z axes (orthogonal to baseline and y)
+        cross(v1, v2, v3);
+
+        // new extrinsic parameters
+        setNormalizedRow(r, 0, v1);
+        setNormalizedRow(r, 1, v2);
+        setNormalizedRow(r, 2, v3);
+
+        // new intrinsic parameters (arbitrary)
+        for (int i = 0; i < 9; i++) {
+            a[i] = (a1[i] + a2[i]) * 0.5;
+        }
+        a[1] = 0; // set skew to zero
+
+        // new projection matrices
+        projectionMatrix(c1, pn1);
+        projectionMatrix(c2, pn2);
+
+        // rectifying image transformation
+        transformation(pn1, q1, t1);
+        transformation(pn2, q2, t2);
+    }
+
+    /**
+     * Decomposes a 3x3 matrix into an upper triangular matrix and an orthogonal matrix with Givens rotations
+     * (same steps and sign conventions as RQDecomp3x3 used by decomposeProjectionMatrix)
+     *
+     * @param m input matrix
+     * @param k resulting upper triangular matrix
+     * @param q resulting orthogonal matrix
+     */
+    void rqDecomposition(double[] m, double[] k, double[] q) {
+        double c;
+        double s;
+        double z;
+
+        // rotation around x axis to eliminate m32
+        s = m[7];
+        c = m[8];
+        z = 1. / Math.sqrt(c * c + s * s + Math.ulp(1.0));
+        c *= z;
+        s *= z;
+        setGivens(1, 0, 0, 0, c, s, 0, -s, c);
+        multiply(m, givens, k);
+        System.arraycopy(givens, 0, q, 0, 9);
+        k[7] = 0;
+
+        // rotation around y axis to eliminate m31
+        s = -k[6];
+        c = k[8];
+        z = 1. / Math.sqrt(c * c + s * s + Math.ulp(1.0));
+        c *= z;
+        s *= z;
+        setGivens(c, 0, -s, 0, 1, 0, s, 0, c);
+        multiply(k, givens, tmp);
+        System.arraycopy(tmp, 0, k, 0, 9);
+        // accumulates Qx * Qy * Qz in q
+        multiply(q, givens, tmp);
+        System.arraycopy(tmp, 0, q, 0, 9);
+        k[6] = 0;
+
+        // rotation around z axis to eliminate m21
+        s = k[3];
+        c = k[4];
+        z = 1. / Math.sqrt(c * c + s * s + Math.ulp(1.0));
+        c *= z;
+        s *= z;
+        setGivens(c, s, 0, -s, c, 0, 0, 0, 1);
+        multiply(k, givens, tmp);
+        System.arraycopy(tmp, 0, k, 0, 9);
+        multiply(q, givens, tmp);
+        System.arraycopy(tmp, 0, q, 0, 9);
+        k[3] = 0;
+
+        // q = Qx * Qy * Qz, the orthogonal factor is its transpose
+        transpose(q);
+
+        // solve the decomposition ambiguity, diagonal entries of k (except the last one) shall be positive.
+        // rotates by 180 degree, i.e. flips the sign of two columns of k and the matching rows of q
+        if (k[0] < 0) {
+            if (k[4] < 0) {
+                flipSigns(k, q, 0, 1);
+            } else {
+                flipSigns(k, q, 0, 2);
+            }
+        } else if (k[4] < 0) {
+            flipSigns(k, q, 1, 2);
+        }
+    }
+
+    private void cameraCenter(double[] po, double[] q, double[] c) {
+        invert(q, qInv);
+        for (int row = 0; row < 3; row++) {
+            c[row] = -(qInv[row * 3] * po[3] + qInv[row * 3 + 1] * po[7] + qInv[row * 3 + 2] * po[11]);
+        }
+    }
+
+    private void projectionMatrix(double[] c, double[] pn) {
+        // A * [R | -R c]
+        for (int row = 0; row < 3; row++) {
+            double t = 0;
+            for (int col = 0; col < 3; col++) {
+                double value = a[row * 3] * r[col] + a[row * 3 + 1] * r[3 + col] + a[row * 3 + 2] * r[6 + col];
+                pn[row * 4 + col] = value;
+                t -= value * c[col];
+            }
+            pn[row * 4 + 3] = t;
+        }
+    }
+
+    private void transformation(double[] pn, double[] q, double[] t) {
+        // Pn(1:3, 1:3) * inv(Po(1:3, 1:3))
+        invert(q, qInv);
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                t[row * 3 + col] = pn[row * 4] * qInv[col]
+                        + pn[row * 4 + 1] * qInv[3 + col]
+                        + pn[row * 4 + 2] * qInv[6 + col];
+            }
+        }
+    }
+
+    private void setGivens(double m00, double m01, double m02,
+                           double m10, double m11, double m12,
+                           double m20, double m21, double m22) {
+        givens[0] = m00;
+        givens[1] = m01;
+        givens[2] = m02;
+        givens[3] = m10;
+        givens[4] = m11;
+        givens[5] = m12;
+        givens[6] = m20;
+        givens[7] = m21;
+        givens[8] = m22;
+    }
+
+    private static void flipSigns(double[] k, double[] q, int first, int second) {
+        for (int row = 0; row < 3; row++) {
+            k[row * 3 + first] = -k[row * 3 + first];
+            k[row * 3 + second] = -k[row * 3 + second];
+        }
+        for (int col = 0; col < 3; col++) {
+            q[first * 3 + col] = -q[first * 3 + col];
+            q[second * 3 + col] = -q[second * 3 + col];
+        }
+    }
+
+    private static void setNormalizedRow(double[] m, int row, double[] v) {
+        double norm = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        m[row * 3] = v[0] / norm;
+        m[row * 3 + 1] = v[1] / norm;
+        m[row * 3 + 2] = v[2] / norm;
+    }
+
+    /**
+     * Copies the left 3x3 block of a 3x4 matrix
+     */
+    static void leftBlock(double[] p, double[] m) {
+        for (int row = 0; row < 3; row++) {
+            m[row * 3] = p[row * 4];
+            m[row * 3 + 1] = p[row * 4 + 1];
+            m[row * 3 + 2] = p[row * 4 + 2];
+        }
+    }
+
+    static void cross(double[] a, double[] b, double[] result) {
+        result[0] = a[1] * b[2] - a[2] * b[1];
+        result[1] = a[2] * b[0] - a[0] * b[2];
+        result[2] = a[0] * b[1] - a[1] * b[0];
+    }
+
+    static void multiply(double[] a, double[] b, double[] result) {
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                result[row * 3 + col] = a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] + a[row * 3 + 2] * b[6 + col];
+            }
+        }
+    }
+
+    static void transpose(double[] m) {
+        double swap;
+        swap = m[1];
+        m[1] = m[3];
+        m[3] = swap;
+        swap = m[2];
+        m[2] = m[6];
+        m[6] = swap;
+        swap = m[5];
+        m[5] = m[7];
+        m[7] = swap;
+    }
+
+    /**
+     * Inverts a 3x3 matrix with the adjugate
+     */
+    static void invert(double[] m, double[] result) {
+        double c00 = m[4] * m[8] - m[5] * m[7];
+        double c01 = m[5] * m[6] - m[3] * m[8];
+        double c02 = m[3] * m[7] - m[4] * m[6];
+        double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        double invDet = det != 0 ? 1 / det : 0;
+
+        result[0] = c00 * invDet;
+        result[1] = (m[2] * m[7] - m[1] * m[8]) * invDet;
+        result[2] = (m[1] * m[5] - m[2] * m[4]) * invDet;
+        result[3] = c01 * invDet;
+        result[4] = (m[0] * m[8] - m[2] * m[6]) * invDet;
+        result[5] = (m[2] * m[3] - m[0] * m[5]) * invDet;
+        result[6] = c02 * invDet;
+        result[7] = (m[1] * m[6] - m[0] * m[7]) * invDet;
+        result[8] = (m[0] * m[4] - m[1] * m[3]) * invDet;
+    }
+}
@@ -0,0 +1,337 @@
+package utils;
+
+import models.CanvasModel;
+import models.RectifyModel;
+import models.RemapModel;
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static org.opencv.core.CvType.CV_16SC2;
+import static org.opencv.core.CvType.CV_32FC1;
+import static org.opencv.core.CvType.CV_64F;
+
+/**
+ * Caches the remap tables of a stereo pair so the projective transformation
+ * only has to be evaluated once per pixel for a fixed set of projection matrices
+ * (the output canvas is derived from the sizes of both images, so they are part of the key)
+ * the tables of a key are built once by the first caller, concurrent callers of the same key wait for them
+ * while other keys are built in parallel
+ * The tables are either stored as 2 float planes (8 bytes per pixel) or in the compact fixed point format of
+ * convertMaps (integer coordinates + index into the interpolation table, 6 bytes per pixel)
+ */
+public class RectificationMapCache {
+
+    private final Map<Key, CompletableFuture<RemapModel>> maps = new ConcurrentHashMap<>();
+    private final boolean fixedPoint;
+    private final RectificationStore store;
+    private final String canvasSettings;
+
+    public RectificationMapCache() {
+        this(false);
+    }
+
+    /**
+     * @param fixedPoint whether the tables are stored in the fixed point format (CV_16SC2 + CV_16UC1)
+     */
+    public RectificationMapCache(boolean fixedPoint) {
+        this(fixedPoint, null, "");
+    }
+
+    /**
+     * @param fixedPoint     whether the tables are stored in the fixed point format (CV_16SC2 + CV_16UC1)
+     * @param store          on-disk store checked before building tables, new tables are saved to it (may be null)
+     * @param canvasSettings description of the settings the canvas supplier uses, part of the store key
+     */
+    public RectificationMapCache(boolean fixedPoint, RectificationStore store, String canvasSettings) {
+        this.fixedPoint = fixedPoint;
+        this.store = store;
+        this.canvasSettings = canvasSettings;
+    }
+
+    /**
+     * Returns the cached remap tables for the given projection matrices and image sizes
+     * builds them from the homographies of the supplied canvas if not cached yet
+     *
+     * @param ppm1       projection matrix 1
+     * @param ppm2       projection matrix 2
+     * @param imageSize1 size of image 1
+     * @param imageSize2 size of image 2
+     * @param canvas     computes the transformation matrices and output canvas if the maps are not cached yet
+     * @return remap tables for both cameras
+     */
+    public RemapModel getOrCreate(Mat ppm1, Mat ppm2, Size imageSize1, Size imageSize2, Supplier<CanvasModel> canvas) {
+        Key key = new Key(ppm1, ppm2, imageSize1, imageSize2, new double[0]);
+        return get(key, "remap", () -> createMaps(canvas.get(), fixedPoint));
+    }
+
+    /**
+     * Returns the cached combined undistortion and rectification tables for the given projection matrices,
+     * camera parameters and image sizes
+     * builds them from the homographies of the supplied canvas if not cached yet
+     *
+     * @param ppm1       projection matrix 1
+     * @param ppm2       projection matrix 2
+     * @param intrinsic  camera matrix of the camera both images were taken with
+     * @param distCoeffs distortion coefficients of the camera
+     * @param imageSize1 size of image 1
+     * @param imageSize2 size of image 2
+     * @param canvas     computes the transformation matrices and output canvas if the maps are not cached yet
+     * @return combined remap tables for both cameras
+     */
+    public RemapModel getOrCreateUndistorted(Mat ppm1, Mat ppm2, Mat intrinsic, Mat distCoeffs, Size imageSize1,
+                                             Size imageSize2, Supplier<CanvasModel> canvas) {
+        double[] intrinsicValues = toArray(intrinsic);
+        double[] distValues = toArray(distCoeffs);
+        double[] camera = Arrays.copyOf(intrinsicValues, intrinsicValues.length + distValues.length);
+        System.arraycopy(distValues, 0, camera, intrinsicValues.length, distValues.length);
+
+        Key key = new Key(ppm1, ppm2, imageSize1, imageSize2, camera);
+        return get(key, "undistort", () -> createUndistortedMaps(canvas.get(), intrinsic, distCoeffs, fixedPoint));
+    }
+
+    /**
+     * Returns the tables of the key, the first caller loads or builds them outside of the map
+     * (a failed build is not cached, the next call tries again)
+     */
+    private RemapModel get(Key key, String mode, Supplier<RemapModel> builder) {
+        CompletableFuture<RemapModel> created = new CompletableFuture<>();
+        CompletableFuture<RemapModel> cached = maps.putIfAbsent(key, created);
+        if (cached != null) {
+            return cached.join();
+        }
+        try {
+            RemapModel remapModel = loadOrCreate(key, mode, builder);
+            created.complete(remapModel);
+            return remapModel;
+        } catch (RuntimeException e) {
+            maps.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the tables from the store or builds them (and saves them to the store)
+     */
+    private RemapModel loadOrCreate(Key key, String mode, Supplier<RemapModel> builder) {
+        if (store == null) {
+            return builder.get();
+        }
+        String storeKey = RectificationStore.key(
+                mode + ";" + key.width1 + "x" + key.height1 + ";" + key.width2 + "x" + key.height2 + ";" + (fixedPoint ? "fixed" : "float") + ";" + canvasSettings,
+                key.ppm1, key.ppm2, key.camera);
+        RemapModel remapModel = store.load(storeKey);
+        if (remapModel == null) {
+            remapModel = builder.get();
+            store.save(storeKey, remapModel);
+        }
+        return remapModel;
+    }
+
+    /**
+     * Removes all cached remap tables
+     */
+    public void clear() {
+        maps.clear();
+    }
+
+    public int size() {
+        return maps.size();
+    }
+
+    public boolean isFixedPoint() {
+        return fixedPoint;
+    }
+
+    /**
+     * Builds the remap tables of both cameras for the given output canvas
+     *
+     * @param canvas     transformation matrices T1 and T2 and size of the rectified images
+     * @param fixedPoint whether the tables are converted to the fixed point format
+     * @return remap tables for both cameras
+     */
+    public static RemapModel createMaps(CanvasModel canvas, boolean fixedPoint) {
+        RectifyModel rectifyModel = canvas.getRectifyModel();
+        Mat map1X = new Mat();
+        Mat map1Y = new Mat();
+        Mat map2X = new Mat();
+        Mat map2Y = new Mat();
+        buildMaps(rectifyModel.getT1(), canvas.getSize(), map1X, map1Y);
+        buildMaps(rectifyModel.getT2(), canvas.getSize(), map2X, map2Y);
+        RemapModel remapModel = new RemapModel(rectifyModel, canvas.getSize(), map1X, map1Y, map2X, map2Y);
+        remapModel.setValidRoi(canvas.getValidRoi());
+        return fixedPoint ? toFixedPoint(remapModel) : remapModel;
+    }
+
+    /**
+     * Builds remap tables which undistort and rectify in a single pass
+     * each pixel of the original image is only resampled once
+     *
+     * @param canvas     transformation matrices T1 and T2 and size of the rectified images
+     * @param intrinsic  camera matrix
+     * @param distCoeffs distortion coefficients
+     * @param fixedPoint whether the tables are converted to the fixed point format
+     * @return combined remap tables for both cameras
+     */
+    public static RemapModel createUndistortedMaps(CanvasModel canvas, Mat intrinsic, Mat distCoeffs, boolean fixedPoint) {
+        RectifyModel rectifyModel = canvas.getRectifyModel();
+        Mat map1X = new Mat();
+        Mat map1Y = new Mat();
+        Mat map2X = new Mat();
+        Mat map2Y = new Mat();
+        buildUndistortedMaps(rectifyModel.getT1(), intrinsic, distCoeffs, canvas.getSize(), map1X, map1Y);
+        buildUndistortedMaps(rectifyModel.getT2(), intrinsic, distCoeffs, canvas.getSize(), map2X, map2Y);
+        RemapModel remapModel = new RemapModel(rectifyModel, canvas.getSize(), map1X, map1Y, map2X, map2Y);
+        remapModel.setValidRoi(canvas.getValidRoi());
+        return fixedPoint ? toFixedPoint(remapModel) : remapModel;
+    }
+
+    /**
+     * Converts float remap tables into the fixed point format used internally by remap:
+     * map 1 holds the integer coordinates (CV_16SC2), map 2 the index of the sub-pixel interpolation weights (CV_16UC1)
+     *
+     * @param remapModel float remap tables
+     * @return fixed point remap tables with the same transformation matrices
+     */
+    public static RemapModel toFixedPoint(RemapModel remapModel) {
+        if (remapModel.isFixedPoint()) {
+            return remapModel;
+        }
+        Mat map1XY = new Mat();
+        Mat map1Table = new Mat();
+        Mat map2XY = new Mat();
+        Mat map2Table = new Mat();
+        Imgproc.convertMaps(remapModel.getMap1X(), remapModel.getMap1Y(), map1XY, map1Table, CV_16SC2);
+        Imgproc.convertMaps(remapModel.getMap2X(), remapModel.getMap2Y(), map2XY, map2Table, CV_16SC2);
+        RemapModel result = new RemapModel(remapModel.getRectifyModel(), remapModel.getSize(),
+                map1XY, map1Table, map2XY, map2Table);
+        result.setValidRoi(remapModel.getValidRoi());
+        return result;
+    }
+
+    /**
+     * Folds the homography into the undistortion map:
+     * an output pixel p is mapped back with inv(T * K) to normalized camera coordinates,
+     * then distorted and projected with K into the original image
+     *
+     * @param homography 3x3 transformation matrix from undistorted to output image
+     * @param intrinsic  camera matrix
+     * @param distCoeffs distortion coefficients
+     * @param outputSize size of the output image
+     * @param mapX       resulting x coordinates (CV_32FC1)
+     * @param mapY       resulting y coordinates (CV_32FC1)
+     */
+    public static void buildUndistortedMaps(Mat homography, Mat intrinsic, Mat distCoeffs, Size outputSize, Mat mapX, Mat mapY) {
+        Mat newCameraMatrix = new Mat();
+        Core.gemm(homography, intrinsic, 1, new Mat(), 0, newCameraMatrix, 0);
+        Calib3d.initUndistortRectifyMap(intrinsic, distCoeffs, Mat.eye(3, 3, CV_64F), newCameraMatrix,
+                outputSize, CV_32FC1, mapX, mapY);
+    }
+
+    /**
+     * Computes for every pixel of the output image the source position under the inverse homography
+     * (same mapping warpPerspective evaluates on every call)
+     *
+     * @param homography 3x3 transformation matrix from source to output image
+     * @param outputSize size of the output image
+     * @param mapX       resulting x coordinates (CV_32FC1)
+     * @param mapY       resulting y coordinates (CV_32FC1)
+     */
+    public static void buildMaps(Mat homography, Size outputSize, Mat mapX, Mat mapY) {
+        double[] h = new double[9];
+        homography.inv().get(0, 0, h);
+
+        int width = (int) outputSize.width;
+        int height = (int) outputSize.height;
+        float[] xs = new float[width * height];
+        float[] ys = new float[width * height];
+
+        for (int y = 0; y < height; y++) {
+            // values which only depend on the row
+            double xRow = h[1] * y + h[2];
+            double yRow = h[4] * y + h[5];
+            double wRow = h[7] * y + h[8];
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                double w = h[6] * x + wRow;
+                w = w != 0 ? 1 / w : 0;
+                xs[offset + x] = (float) ((h[0] * x + xRow) * w);
+                ys[offset + x] = (float) ((h[3] * x + yRow) * w);
+            }
+        }
+
+        mapX.create(height, width, CV_32FC1);
+        mapY.create(height, width, CV_32FC1);
+        mapX.put(0, 0, xs);
+        mapY.put(0, 0, ys);
+    }
+
+    static double[] toArray(Mat mat) {
+        Mat values = mat;
+        if (mat.type() != CV_64F || !mat.isContinuous()) {
+            values = new Mat();
+            mat.convertTo(values, CV_64F);
+        }
+        double[] result = new double[(int) values.total()];
+        values.get(0, 0, result);
+        return result;
+    }
+
+    /**
+     * Identifies a pair of projection matrices with the image sizes (and camera parameters) by value
+     */
+    private static final class Key {
+        private final double[] ppm1;
+        private final double[] ppm2;
+        private final double[] camera;
+        private final int width1;
+        private final int height1;
+        private final int width2;
+        private final int height2;
+
+        Key(Mat ppm1, Mat ppm2, Size imageSize1, Size imageSize2, double[] camera) {
+            this.ppm1 = toArray(ppm1);
+            this.ppm2 = toArray(ppm2);
+            this.camera = camera;
+            this.width1 = (int) imageSize1.width;
+            this.height1 = (int) imageSize1.height;
+            this.width2 = (int) imageSize2.width;
+            this.height2 = (int) imageSize2.height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width1 == key.width1 && height1 == key.height1 && width2 == key.width2 && height2 == key.height2
+                    && Arrays.equals(ppm1, key.ppm1) && Arrays.equals(ppm2, key.ppm2)
+                    && Arrays.equals(camera, key.camera);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(ppm1);
+            result = 31 * result + Arrays.hashCode(ppm2);
+            result = 31 * result + Arrays.hashCode(camera);
+            result = 31 * result + width1;
+            result = 31 * result + height1;
+            result = 31 * result + width2;
+            result = 31 * result + height2;
+            return result;
+        }
+    }
+}
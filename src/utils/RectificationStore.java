@@ -0,0 +1,98 @@
+package utils;
+
+import models.RemapModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Content addressed on-disk store for rectification results (T1, T2, Pn1, Pn2 and the remap tables)
+ * entries are named after a SHA-256 hash of the projection matrices and the output settings,
+ * so every process using the same calibration finds the same entry
+ * entries are written to a temporary file and moved into place, readers never see partial files
+ * an entry which can not be decoded (corrupted, other format version) is treated as missing and replaced on the next save
+ */
+public class RectificationStore {
+    private static final String EXTENSION = ".rmap";
+
+    private final File directory;
+
+    /**
+     * @param directory directory of the store, created if missing
+     */
+    public RectificationStore(String directory) {
+        this.directory = new File(directory);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            System.out.println("Can not create rectification store " + directory);
+        }
+    }
+
+    /**
+     * Hashes the given settings and matrix values
+     *
+     * @param settings description of the output settings (size, format, ...)
+     * @param values   matrix values (projection matrices, camera parameters, ...)
+     * @return hex encoded SHA-256 hash
+     */
+    public static String key(String settings, double[]... values) {
+        byte[][] parts = new byte[values.length + 1][];
+        parts[0] = settings.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < values.length; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + values[i].length * 8).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(values[i].length);
+            for (double value : values[i]) {
+                buffer.putDouble(value);
+            }
+            parts[i + 1] = buffer.array();
+        }
+        return Utils.sha256(parts);
+    }
+
+    /**
+     * @param key key created by 'key'
+     * @return stored rectification result or null if there is none or it can not be decoded
+     */
+    public RemapModel load(String key) {
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        return CalibrationUtils.loadRemapModel(file.getPath());
+    }
+
+    /**
+     * Stores a rectification result, an existing entry with the same key is replaced
+     *
+     * @param key        key created by 'key'
+     * @param remapModel rectification result
+     * @return result whether saving was successful
+     */
+    public boolean save(String key, RemapModel remapModel) {
+        try {
+            Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+            if (!CalibrationUtils.saveRemapModel(temp.toString(), remapModel)) {
+                Files.deleteIfExists(temp);
+                return false;
+            }
+            Files.move(temp, file(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return false;
+    }
+
+    public boolean contains(String key) {
+        return file(key).isFile();
+    }
+
+    private File file(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+}
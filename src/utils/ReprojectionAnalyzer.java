@@ -0,0 +1,85 @@
+package utils;
+
+import org.opencv.core.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.opencv.calib3d.Calib3d.projectPoints;
+
+/**
+ * Computes the reprojection error of every corner of every calibration view, the views are projected in parallel
+ */
+public class ReprojectionAnalyzer {
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool pool the views are projected on
+     */
+    public ReprojectionAnalyzer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ReprojectionAnalyzer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Projects the board of every view with its pose and the camera parameters
+     *
+     * @param objectPoints board positions of the corners
+     * @param imagePoints  detected corners
+     * @param rVectors     rotation vectors of the views (from 'calibrateCamera')
+     * @param tVectors     translation vectors of the views (from 'calibrateCamera')
+     * @param intrinsic    camera matrix
+     * @param distCoeffs   distortion coefficients
+     * @return distance between detected and projected corner in pixels, per view and corner
+     */
+    public double[][] cornerErrors(List<Mat> objectPoints, List<Mat> imagePoints, List<Mat> rVectors, List<Mat> tVectors,
+                                   Mat intrinsic, Mat distCoeffs) {
+        MatOfDouble distortion = new MatOfDouble(distCoeffs);
+        double[][] errors = new double[objectPoints.size()][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int v = 0; v < objectPoints.size(); v++) {
+            int view = v;
+            tasks.add(pool.submit(() -> {
+                MatOfPoint2f projected = new MatOfPoint2f();
+                projectPoints(new MatOfPoint3f(objectPoints.get(view)), rVectors.get(view), tVectors.get(view),
+                        intrinsic, distortion, projected);
+                float[] detectedCorners = new float[(int) imagePoints.get(view).total() * 2];
+                float[] projectedCorners = new float[(int) projected.total() * 2];
+                imagePoints.get(view).get(0, 0, detectedCorners);
+                projected.get(0, 0, projectedCorners);
+
+                double[] cornerErrors = new double[detectedCorners.length / 2];
+                for (int i = 0; i < cornerErrors.length; i++) {
+                    cornerErrors[i] = Math.hypot(detectedCorners[2 * i] - projectedCorners[2 * i],
+                            detectedCorners[2 * i + 1] - projectedCorners[2 * i + 1]);
+                }
+                errors[view] = cornerErrors;
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return errors;
+    }
+
+    /**
+     * @param errors corner errors
+     * @return root mean square of the errors
+     */
+    public static double rms(double[]... errors) {
+        double sum = 0;
+        int count = 0;
+        for (double[] viewErrors : errors) {
+            for (double error : viewErrors) {
+                sum += error * error;
+            }
+            count += viewErrors.length;
+        }
+        return count > 0 ? Math.sqrt(sum / count) : 0;
+    }
+}
@@ -0,0 +1,313 @@
+package utils;
+
+import models.SyntheticViewModel;
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.opencv.core.CvType.*;
+
+/**
+ * Renders chessboard views with a known camera (intrinsics and distortion) and known random board poses
+ * every image pixel is traced back through the distortion onto the board plane, so the rendered corners
+ * lie exactly at the projected ground truth positions (up to the added sensor noise)
+ */
+public class SyntheticSceneGenerator {
+    private static final int TEXTURE_SQUARE = 64; // texture pixels per board square
+    private static final double NOISE_SIGMA = 2.0; // gray values
+    private static final double BACKGROUND = 128;
+    private static final double MAX_TILT = Math.toRadians(35);
+    private static final double MAX_ROLL = Math.toRadians(20);
+    private static final int GROUND_TRUTH_MAGIC = 0x48545253; // "SRTH"
+    private static final int GROUND_TRUTH_VERSION = 1;
+
+    private final Size imageSize;
+    private final Size chessboardDimensions;
+    private final float squareSize;
+    private final Mat intrinsic;
+    private final Mat distCoeffs;
+    private final Random random;
+
+    private Mat texture;
+    private Mat rays;
+
+    /**
+     * @param imageSize            size of the rendered images
+     * @param chessboardDimensions number of inner corners per row and column
+     * @param squareSize           size of a board square (meters)
+     * @param intrinsic            camera matrix
+     * @param distCoeffs           distortion coefficients (k1, k2, p1, p2, k3)
+     * @param seed                 seed of the random poses and noise
+     */
+    public SyntheticSceneGenerator(Size imageSize, Size chessboardDimensions, float squareSize,
+                                   Mat intrinsic, Mat distCoeffs, long seed) {
+        this.imageSize = imageSize;
+        this.chessboardDimensions = chessboardDimensions;
+        this.squareSize = squareSize;
+        this.intrinsic = intrinsic;
+        this.distCoeffs = distCoeffs;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param imageSize size of the rendered images
+     * @return camera matrix of a typical webcam lens (horizontal field of view of about 60 degrees)
+     */
+    public static Mat defaultIntrinsic(Size imageSize) {
+        Mat intrinsic = Mat.eye(3, 3, CV_64F);
+        intrinsic.put(0, 0, 0.9 * imageSize.width);
+        intrinsic.put(1, 1, 0.9 * imageSize.width);
+        intrinsic.put(0, 2, (imageSize.width - 1) / 2 + 0.013 * imageSize.width);
+        intrinsic.put(1, 2, (imageSize.height - 1) / 2 - 0.011 * imageSize.height);
+        return intrinsic;
+    }
+
+    /**
+     * @return moderate barrel distortion (k1, k2, p1, p2, k3)
+     */
+    public static Mat defaultDistCoeffs() {
+        Mat distCoeffs = new Mat(5, 1, CV_64F);
+        distCoeffs.put(0, 0, -0.12, 0.08, 0.0008, -0.0005, 0);
+        return distCoeffs;
+    }
+
+    /**
+     * @return board positions of the inner corners (same order as 'findChessboardCorners')
+     */
+    public MatOfPoint3f objectPoints() {
+        List<Point3> points = new ArrayList<>();
+        for (int i = 0; i < chessboardDimensions.height; i++) {
+            for (int j = 0; j < chessboardDimensions.width; j++) {
+                points.add(new Point3(j * squareSize, i * squareSize, 0));
+            }
+        }
+        MatOfPoint3f objectPoints = new MatOfPoint3f();
+        objectPoints.fromList(points);
+        return objectPoints;
+    }
+
+    /**
+     * @param views number of views
+     * @return rendered views with their ground truth
+     */
+    public List<SyntheticViewModel> generate(int views) {
+        List<SyntheticViewModel> result = new ArrayList<>();
+        for (int i = 0; i < views; i++) {
+            result.add(generateView());
+        }
+        return result;
+    }
+
+    /**
+     * Renders the board with a random pose, the whole board (including its white border) is inside the image
+     *
+     * @return rendered view with its ground truth
+     */
+    public SyntheticViewModel generateView() {
+        prepare();
+        MatOfPoint3f objectPoints = objectPoints();
+        MatOfDouble distortion = new MatOfDouble(distCoeffs);
+        while (true) {
+            Mat rVector = new Mat();
+            Mat tVector = new Mat(3, 1, CV_64F);
+            randomPose(rVector, tVector);
+
+            // outer corners of the white board border must be visible
+            double border = 2 * squareSize;
+            double width = (chessboardDimensions.width - 1) * squareSize;
+            double height = (chessboardDimensions.height - 1) * squareSize;
+            MatOfPoint3f outline = new MatOfPoint3f(new Point3(-border, -border, 0), new Point3(width + border, -border, 0),
+                    new Point3(width + border, height + border, 0), new Point3(-border, height + border, 0));
+            MatOfPoint2f projectedOutline = new MatOfPoint2f();
+            Calib3d.projectPoints(outline, rVector, tVector, intrinsic, distortion, projectedOutline);
+            if (!inside(projectedOutline)) {
+                continue;
+            }
+
+            MatOfPoint2f corners = new MatOfPoint2f();
+            Calib3d.projectPoints(objectPoints, rVector, tVector, intrinsic, distortion, corners);
+            return new SyntheticViewModel(render(rVector, tVector), rVector, tVector, corners);
+        }
+    }
+
+    /**
+     * Saves the views as 'view<i>.png', the camera parameters as 'cameraParams' (text format of 'saveCameraCalibration')
+     * and the ground truth as 'groundTruth.bin'
+     * binary format (little endian): magic, version, number of views, board size, square size,
+     * camera matrix, distortion coefficients, then rotation vector, translation vector and corners of every view
+     *
+     * @param directory output directory, created if missing
+     * @param views     rendered views
+     * @return result whether saving was successful
+     */
+    public boolean save(String directory, List<SyntheticViewModel> views) {
+        File outputDirectory = new File(directory);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            System.out.println("Can not create directory " + directory);
+            return false;
+        }
+        for (int i = 0; i < views.size(); i++) {
+            if (!Imgcodecs.imwrite(new File(outputDirectory, "view" + i + ".png").getPath(), views.get(i).getImage())) {
+                return false;
+            }
+        }
+        if (!CalibrationUtils.saveCameraCalibration(new File(outputDirectory, "cameraParams").getPath(), intrinsic, distCoeffs)) {
+            return false;
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputDirectory, "groundTruth.bin")))) {
+            ByteBuffer header = ByteBuffer.allocate(6 * 4).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(GROUND_TRUTH_MAGIC).putInt(GROUND_TRUTH_VERSION).putInt(views.size())
+                    .putInt((int) chessboardDimensions.width).putInt((int) chessboardDimensions.height).putFloat(squareSize);
+            out.write(header.array());
+            CalibrationUtils.writeMat(out, intrinsic);
+            CalibrationUtils.writeMat(out, distCoeffs);
+            for (SyntheticViewModel view : views) {
+                CalibrationUtils.writeMat(out, view.getRVector());
+                CalibrationUtils.writeMat(out, view.getTVector());
+                CalibrationUtils.writeMat(out, view.getCorners());
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Renders the board texture and traces every image pixel to its undistorted normalized ray (done once)
+     */
+    private void prepare() {
+        if (texture != null) {
+            return;
+        }
+        texture = Utils.renderChessboard(chessboardDimensions, TEXTURE_SQUARE);
+
+        int width = (int) imageSize.width;
+        int height = (int) imageSize.height;
+        float[] pixels = new float[width * height * 2];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i += 2) {
+                pixels[i] = x;
+                pixels[i + 1] = y;
+            }
+        }
+        Mat grid = new Mat(width * height, 1, CV_32FC2);
+        grid.put(0, 0, pixels);
+        rays = new Mat();
+        Calib3d.undistortPointsIter(grid, rays, intrinsic, distCoeffs, new Mat(), new Mat(),
+                new TermCriteria(TermCriteria.COUNT | TermCriteria.EPS, 20, 1e-9));
+        rays = rays.reshape(2, height);
+    }
+
+    /**
+     * Random board pose: tilted by up to 35 degrees, rolled by up to 20 degrees, filling 35% to 70% of the image width
+     */
+    private void randomPose(Mat rVector, Mat tVector) {
+        double tiltX = (2 * random.nextDouble() - 1) * MAX_TILT;
+        double tiltY = (2 * random.nextDouble() - 1) * MAX_TILT;
+        double roll = (2 * random.nextDouble() - 1) * MAX_ROLL;
+        Mat rotation = rotation(tiltX, tiltY, roll);
+        Calib3d.Rodrigues(rotation, rVector);
+
+        double fx = intrinsic.get(0, 0)[0];
+        double fy = intrinsic.get(1, 1)[0];
+        double boardWidth = (chessboardDimensions.width + 3) * squareSize;
+        double fraction = 0.35 + 0.35 * random.nextDouble();
+        double z = fx * boardWidth / (fraction * imageSize.width);
+        double x = (2 * random.nextDouble() - 1) * 0.5 * (1 - fraction) * imageSize.width * z / fx;
+        double y = (2 * random.nextDouble() - 1) * 0.5 * (1 - fraction) * imageSize.height * z / fy;
+
+        // the board center is placed at (x, y, z): t = c - R * boardCenter
+        double[] r = new double[9];
+        rotation.get(0, 0, r);
+        double centerX = (chessboardDimensions.width - 1) * squareSize / 2;
+        double centerY = (chessboardDimensions.height - 1) * squareSize / 2;
+        tVector.put(0, 0,
+                x - r[0] * centerX - r[1] * centerY,
+                y - r[3] * centerX - r[4] * centerY,
+                z - r[6] * centerX - r[7] * centerY);
+    }
+
+    private static Mat rotation(double angleX, double angleY, double angleZ) {
+        Mat rx = Mat.eye(3, 3, CV_64F);
+        rx.put(1, 1, Math.cos(angleX), -Math.sin(angleX));
+        rx.put(2, 1, Math.sin(angleX), Math.cos(angleX));
+        Mat ry = Mat.eye(3, 3, CV_64F);
+        ry.put(0, 0, Math.cos(angleY), 0, Math.sin(angleY));
+        ry.put(2, 0, -Math.sin(angleY), 0, Math.cos(angleY));
+        Mat rz = Mat.eye(3, 3, CV_64F);
+        rz.put(0, 0, Math.cos(angleZ), -Math.sin(angleZ));
+        rz.put(1, 0, Math.sin(angleZ), Math.cos(angleZ));
+        Mat rotation = new Mat();
+        Core.gemm(rz, ry, 1, new Mat(), 0, rotation);
+        Core.gemm(rotation, rx, 1, new Mat(), 0, rotation);
+        return rotation;
+    }
+
+    /**
+     * Maps every pixel ray onto the board plane and samples the board texture there
+     */
+    private Mat render(Mat rVector, Mat tVector) {
+        Mat rotation = new Mat();
+        Calib3d.Rodrigues(rVector, rotation);
+        double[] r = new double[9];
+        rotation.get(0, 0, r);
+        double[] t = new double[3];
+        tVector.get(0, 0, t);
+
+        // board plane (X, Y, 1) -> normalized camera coordinates: [r1 r2 t]
+        Mat planeToRay = new Mat(3, 3, CV_64F);
+        planeToRay.put(0, 0,
+                r[0], r[1], t[0],
+                r[3], r[4], t[1],
+                r[6], r[7], t[2]);
+        // board plane -> texture pixels, the first inner corner lies between texture pixels 2 * square - 1 and 2 * square
+        double scale = TEXTURE_SQUARE / squareSize;
+        double offset = 2 * TEXTURE_SQUARE - 0.5;
+        Mat planeToTexture = new Mat(3, 3, CV_64F);
+        planeToTexture.put(0, 0,
+                scale, 0, offset,
+                0, scale, offset,
+                0, 0, 1);
+        Mat rayToTexture = new Mat();
+        Core.gemm(planeToTexture, planeToRay.inv(), 1, new Mat(), 0, rayToTexture);
+
+        Mat map = new Mat();
+        Core.perspectiveTransform(rays, map, rayToTexture);
+        Mat gray = new Mat();
+        Imgproc.remap(texture, gray, map, new Mat(), Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(BACKGROUND));
+
+        // the noise is drawn from the seeded generator, so the global OpenCV RNG of the process is left alone
+        short[] noiseValues = new short[(int) gray.total()];
+        for (int i = 0; i < noiseValues.length; i++) {
+            noiseValues[i] = (short) Math.round(random.nextGaussian() * NOISE_SIGMA);
+        }
+        Mat noise = new Mat(gray.size(), CV_16SC1);
+        noise.put(0, 0, noiseValues);
+        Mat noisy = new Mat();
+        gray.convertTo(noisy, CV_16SC1);
+        Core.add(noisy, noise, noisy);
+        noisy.convertTo(gray, CV_8UC1);
+
+        Mat image = new Mat();
+        Imgproc.cvtColor(gray, image, Imgproc.COLOR_GRAY2BGR);
+        return image;
+    }
+
+    private boolean inside(MatOfPoint2f points) {
+        for (Point point : points.toArray()) {
+            if (point.x < 0 || point.y < 0 || point.x > imageSize.width - 1 || point.y > imageSize.height - 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,6 +5,8 @@ import org.opencv.core.*;
 import org.opencv.features2d.*;
 import org.opencv.imgproc.Imgproc;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -12,7 +14,6 @@ import java.util.List;
 import static org.opencv.calib3d.Calib3d.*;
 import static org.opencv.core.Core.NORM_HAMMING;
 import static org.opencv.core.CvType.CV_32F;
-import static org.opencv.imgcodecs.Imgcodecs.imwrite;
 import static org.opencv.imgproc.Imgproc.FILLED;
 
 public class Utils {
@@ -21,6 +22,7 @@ public class Utils {
     private MatOfPoint2f good_matches_2;
     private Mat imageOne;
     private Mat imageTwo;
+    private ImageWriter imageWriter = ImageWriter.synchronous();
 
     /**
      * Draws computed Epilines on the given images
@@ -270,7 +272,7 @@ public class Utils {
     public void undistortImages(Mat image, Mat intrinsic, Mat distCoeffs, int index) {
         Mat undistortedImage = new Mat();
         Calib3d.undistort(image, undistortedImage, intrinsic, distCoeffs);
-        imwrite("./res/output/undistorted/undistorted" + index + ".jpg", undistortedImage);
+        imageWriter.write("./res/output/undistorted/undistorted" + index, undistortedImage);
     }
 
 
@@ -288,6 +290,7 @@ public class Utils {
         Mat dst = new Mat();
         List<Mat> src = Arrays.asList(imageOne, imageTwo);
         Core.hconcat(src, dst);
+        int offset = imageOne.cols(); // image 2 starts right next to image 1
 
         Scalar color = new Scalar(Math.random() * 255,
                 Math.random() * 255,
@@ -295,7 +298,7 @@ public class Utils {
         Imgproc.line(dst,
                 new Point(imagePoints1.get(0, 0)[0],
                         imagePoints1.get(0, 0)[1]),
-                new Point(1000 + imagePoints2.get(0, 0)[0],
+                new Point(offset + imagePoints2.get(0, 0)[0],
                         imagePoints2.get(0, 0)[1]),
                 color, 2
         );
@@ -305,7 +308,7 @@ public class Utils {
                 color,
                 FILLED);
         Imgproc.circle(dst,
-                new Point(1000 + imagePoints2.get(0, 0)[0], imagePoints2.get(0, 0)[1]),
+                new Point(offset + imagePoints2.get(0, 0)[0], imagePoints2.get(0, 0)[1]),
                 4,
                 color,
                 FILLED);
@@ -313,7 +316,7 @@ public class Utils {
         Imgproc.line(dst,
                 new Point(imagePoints1.get(35, 0)[0],
                         imagePoints1.get(35, 0)[1]),
-                new Point(1000 + imagePoints2.get(35, 0)[0],
+                new Point(offset + imagePoints2.get(35, 0)[0],
                         imagePoints2.get(35, 0)[1]),
                 color, 2
         );
@@ -323,7 +326,7 @@ public class Utils {
                 color,
                 FILLED);
         Imgproc.circle(dst,
-                new Point(1000 + imagePoints2.get(35, 0)[0], imagePoints2.get(35, 0)[1]),
+                new Point(offset + imagePoints2.get(35, 0)[0], imagePoints2.get(35, 0)[1]),
                 4,
                 color,
                 FILLED);
@@ -331,7 +334,7 @@ public class Utils {
         Imgproc.line(dst,
                 new Point(imagePoints1.get(45, 0)[0],
                         imagePoints1.get(45, 0)[1]),
-                new Point(1000 + imagePoints2.get(45, 0)[0],
+                new Point(offset + imagePoints2.get(45, 0)[0],
                         imagePoints2.get(45, 0)[1]),
                 color, 2
         );
@@ -342,10 +345,100 @@ public class Utils {
                 color,
                 FILLED);
         Imgproc.circle(dst,
-                new Point(1000 + imagePoints2.get(45, 0)[0], imagePoints2.get(45, 0)[1]),
+                new Point(offset + imagePoints2.get(45, 0)[0], imagePoints2.get(45, 0)[1]),
                 4,
                 color,
                 FILLED);
-        imwrite("./res/output/epipolar/combined_epipolar.jpg", dst);
+        imageWriter.write("./res/output/epipolar/combined_epipolar", dst);
+    }
+
+    /**
+     * @param imageWriter writer of the output images (codec, quality and encoder threads)
+     */
+    public void setImageWriter(ImageWriter imageWriter) {
+        this.imageWriter = imageWriter;
+    }
+
+    /**
+     * Renders a chessboard (squares = inner corners + 1) surrounded by a white border of one square,
+     * the top left square is black
+     *
+     * @param chessboardDimensions number of inner corners per row and column
+     * @param squarePixels         pixels per square
+     * @return gray board image (CV_8UC1)
+     */
+    public static Mat renderChessboard(Size chessboardDimensions, int squarePixels) {
+        int columns = (int) chessboardDimensions.width + 1;
+        int rows = (int) chessboardDimensions.height + 1;
+        Mat board = new Mat((rows + 2) * squarePixels, (columns + 2) * squarePixels, CvType.CV_8UC1, new Scalar(255));
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if ((row + column) % 2 == 0) {
+                    Point topLeft = new Point((column + 1) * squarePixels, (row + 1) * squarePixels);
+                    Point bottomRight = new Point((column + 2) * squarePixels - 1, (row + 2) * squarePixels - 1);
+                    Imgproc.rectangle(board, topLeft, bottomRight, new Scalar(0), Imgproc.FILLED);
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Hashes the given byte arrays one after another, used to name the entries of the on-disk caches
+     *
+     * @param parts content to be hashed
+     * @return hex encoded SHA-256 hash
+     */
+    public static String sha256(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Compares file names so that embedded numbers are ordered by value (calib2 before calib10)
+     */
+    public static int compareNatural(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int startA = i;
+                int startB = j;
+                while (i < a.length() && Character.isDigit(a.charAt(i))) {
+                    i++;
+                }
+                while (j < b.length() && Character.isDigit(b.charAt(j))) {
+                    j++;
+                }
+                String numberA = a.substring(startA, i).replaceFirst("^0+(?=.)", "");
+                String numberB = b.substring(startB, j).replaceFirst("^0+(?=.)", "");
+                int result = numberA.length() != numberB.length()
+                        ? Integer.compare(numberA.length(), numberB.length())
+                        : numberA.compareTo(numberB);
+                if (result != 0) {
+                    return result;
+                }
+            } else {
+                if (ca != cb) {
+                    return Character.compare(ca, cb);
+                }
+                i++;
+                j++;
+            }
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
     }
 }
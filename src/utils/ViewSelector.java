@@ -0,0 +1,221 @@
+package utils;
+
+import org.opencv.core.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.opencv.calib3d.Calib3d.projectPoints;
+import static org.opencv.calib3d.Calib3d.solvePnP;
+
+/**
+ * Selects the most informative calibration views so 'calibrateCamera' can run on a bounded number of views
+ * every view is described by 5 image space features: board center (x, y), board size and its perspective tilt
+ * in both directions (log ratio of the top / bottom and left / right board edges),
+ * views are picked greedily so that each new view is as far as possible
+ * from the already selected ones and covers image regions not covered yet
+ * the features only approximate the pose: boards at different distance or rotation may look alike in the image,
+ * the selection does not measure the diversity of the rotation and translation vectors
+ */
+public class ViewSelector {
+    private static final int GRID_COLUMNS = 8;
+    private static final int GRID_ROWS = 6;
+    private static final double COVERAGE_WEIGHT = 1.0;
+
+    private final Size chessboardDimensions;
+
+    /**
+     * @param chessboardDimensions number of inner corners per row and column
+     */
+    public ViewSelector(Size chessboardDimensions) {
+        this.chessboardDimensions = chessboardDimensions;
+    }
+
+    /**
+     * @param imagePoints   detected corners of all views
+     * @param count         number of views to be selected
+     * @param requiredViews views that are always selected
+     * @return sorted indices of the selected views
+     */
+    public List<Integer> select(List<Mat> imagePoints, int count, int... requiredViews) {
+        int views = imagePoints.size();
+        List<Integer> selected = new ArrayList<>();
+        if (count >= views) {
+            for (int i = 0; i < views; i++) {
+                selected.add(i);
+            }
+            return selected;
+        }
+
+        // extent of all corners, the features and the coverage grid are relative to it
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        List<float[]> corners = new ArrayList<>();
+        for (Mat points : imagePoints) {
+            float[] data = new float[(int) points.total() * 2];
+            points.get(0, 0, data);
+            corners.add(data);
+            for (int i = 0; i < data.length; i += 2) {
+                minX = Math.min(minX, data[i]);
+                maxX = Math.max(maxX, data[i]);
+                minY = Math.min(minY, data[i + 1]);
+                maxY = Math.max(maxY, data[i + 1]);
+            }
+        }
+        double width = Math.max(1, maxX - minX);
+        double height = Math.max(1, maxY - minY);
+
+        double[][] features = new double[views][];
+        boolean[][] cells = new boolean[views][];
+        for (int v = 0; v < views; v++) {
+            features[v] = features(corners.get(v), minX, minY, width, height);
+            cells[v] = cells(corners.get(v), minX, minY, width, height);
+        }
+
+        boolean[] covered = new boolean[GRID_COLUMNS * GRID_ROWS];
+        for (int view : requiredViews) {
+            if (view >= 0 && view < views && !selected.contains(view)) {
+                add(view, selected, cells, covered);
+            }
+        }
+        if (selected.isEmpty()) {
+            // start with the view farthest from the average view
+            double[] mean = new double[features[0].length];
+            for (double[] feature : features) {
+                for (int i = 0; i < mean.length; i++) {
+                    mean[i] += feature[i] / views;
+                }
+            }
+            int first = 0;
+            for (int v = 1; v < views; v++) {
+                if (distance(features[v], mean) > distance(features[first], mean)) {
+                    first = v;
+                }
+            }
+            add(first, selected, cells, covered);
+        }
+
+        while (selected.size() < count) {
+            int best = -1;
+            double bestScore = -1;
+            for (int v = 0; v < views; v++) {
+                if (selected.contains(v)) {
+                    continue;
+                }
+                double nearest = Double.MAX_VALUE;
+                for (int s : selected) {
+                    nearest = Math.min(nearest, distance(features[v], features[s]));
+                }
+                int newCells = 0;
+                for (int c = 0; c < covered.length; c++) {
+                    if (cells[v][c] && !covered[c]) {
+                        newCells++;
+                    }
+                }
+                double score = nearest + COVERAGE_WEIGHT * newCells / covered.length;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = v;
+                }
+            }
+            add(best, selected, cells, covered);
+        }
+        Collections.sort(selected);
+        return selected;
+    }
+
+    /**
+     * RMS reprojection error of views with the given camera parameters,
+     * the pose of every view is estimated with 'solvePnP'
+     *
+     * @param objectPoints board positions of the corners
+     * @param imagePoints  detected corners
+     * @param intrinsic    camera matrix
+     * @param distCoeffs   distortion coefficients
+     * @return RMS reprojection error in pixels
+     */
+    public static double reprojectionError(List<Mat> objectPoints, List<Mat> imagePoints, Mat intrinsic, Mat distCoeffs) {
+        MatOfDouble distortion = new MatOfDouble(distCoeffs);
+        double squaredError = 0;
+        long points = 0;
+        for (int v = 0; v < objectPoints.size(); v++) {
+            MatOfPoint3f object = new MatOfPoint3f(objectPoints.get(v));
+            MatOfPoint2f image = new MatOfPoint2f(imagePoints.get(v));
+            Mat rVector = new Mat();
+            Mat tVector = new Mat();
+            solvePnP(object, image, intrinsic, distortion, rVector, tVector);
+            MatOfPoint2f projected = new MatOfPoint2f();
+            projectPoints(object, rVector, tVector, intrinsic, distortion, projected);
+            double norm = Core.norm(image, projected, Core.NORM_L2);
+            squaredError += norm * norm;
+            points += image.total();
+        }
+        return points > 0 ? Math.sqrt(squaredError / points) : 0;
+    }
+
+    private static void add(int view, List<Integer> selected, boolean[][] cells, boolean[] covered) {
+        selected.add(view);
+        for (int c = 0; c < covered.length; c++) {
+            covered[c] |= cells[view][c];
+        }
+    }
+
+    /**
+     * @return center x, center y, size, vertical tilt (log ratio of top and bottom edge)
+     * and horizontal tilt (log ratio of left and right edge) of the board
+     */
+    private double[] features(float[] corners, double minX, double minY, double width, double height) {
+        int columns = (int) chessboardDimensions.width;
+        int rows = (int) chessboardDimensions.height;
+        int topLeft = 0;
+        int topRight = columns - 1;
+        int bottomLeft = (rows - 1) * columns;
+        int bottomRight = rows * columns - 1;
+
+        double centerX = 0;
+        double centerY = 0;
+        int count = corners.length / 2;
+        for (int i = 0; i < corners.length; i += 2) {
+            centerX += corners[i] / count;
+            centerY += corners[i + 1] / count;
+        }
+        double top = length(corners, topLeft, topRight);
+        double bottom = length(corners, bottomLeft, bottomRight);
+        double left = length(corners, topLeft, bottomLeft);
+        double right = length(corners, topRight, bottomRight);
+        double size = Math.sqrt((top + bottom) * (left + right) / 4) / Math.hypot(width, height);
+
+        return new double[]{
+                (centerX - minX) / width,
+                (centerY - minY) / height,
+                size,
+                Math.log(top / bottom),
+                Math.log(left / right)
+        };
+    }
+
+    /**
+     * @return cells of the coverage grid that contain at least one corner
+     */
+    private static boolean[] cells(float[] corners, double minX, double minY, double width, double height) {
+        boolean[] cells = new boolean[GRID_COLUMNS * GRID_ROWS];
+        for (int i = 0; i < corners.length; i += 2) {
+            int column = Math.min(GRID_COLUMNS - 1, (int) ((corners[i] - minX) / width * GRID_COLUMNS));
+            int row = Math.min(GRID_ROWS - 1, (int) ((corners[i + 1] - minY) / height * GRID_ROWS));
+            cells[row * GRID_COLUMNS + column] = true;
+        }
+        return cells;
+    }
+
+    private static double length(float[] corners, int from, int to) {
+        return Math.hypot(corners[2 * to] - corners[2 * from], corners[2 * to + 1] - corners[2 * from + 1]);
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return Math.sqrt(sum);
+    }
+}